@@ -0,0 +1,64 @@
+package uk.ac.ed.bikerental;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Builds the providers and bikes used by the benchmarks
+ */
+class BenchmarkFleets {
+
+    static final BikeType MOUNTAIN = new BikeType("Mountain Bike", new BigDecimal(450));
+    static final BikeType ROAD = new BikeType("Road Bike", new BigDecimal(800));
+
+    /**
+     * Makes a provider with half of its fleet mountain bikes and half road bikes.
+     * Every bike is booked for 2 days in every 4, starting from before today, with the bikes staggered
+     * so that some of them are free on any given day
+     * @param name the name of the provider
+     * @param postcode the postcode of the provider
+     * @param fleetSize the number of bikes
+     * @param bookingsPerBike the number of bookings each bike has
+     * @return the new provider
+     */
+    static BikeProvider makeProvider(String name, String postcode, int fleetSize, int bookingsPerBike){
+        DiscountedPricing pricing = makeDiscountedPricing();
+        BikeProvider provider = new BikeProvider(name, new Location(postcode, "1 Bench St."), pricing,
+                new SimpleValuation(), new MockDeliveryService());
+
+        LocalDate first = LocalDate.now().minusDays(2L * bookingsPerBike);
+        for (int i=0; i<fleetSize; i++){
+            Bike b = new Bike(i % 2 == 0 ? MOUNTAIN : ROAD);
+            for (int j=0; j<bookingsPerBike; j++){
+                LocalDate start = first.plusDays(4L * j + (i / 2) % 4);
+                b.addToDates(new DateRange(start, start.plusDays(1)));
+            }
+            provider.addBike(b);
+        }
+        return provider;
+    }
+
+    /**
+     * @return a DiscountedPricing with prices for both bike types and the usual discount tiers
+     */
+    static DiscountedPricing makeDiscountedPricing(){
+        DiscountedPricing pricing = new DiscountedPricing();
+        pricing.addBikeTypeToPrices(MOUNTAIN, new BigDecimal("25.50"));
+        pricing.addBikeTypeToPrices(ROAD, new BigDecimal("40.00"));
+        pricing.addDiscount(new DurationDiscount(14, -1, new BigDecimal(15)));
+        pricing.addDiscount(new DurationDiscount(7, 13, new BigDecimal(10)));
+        pricing.addDiscount(new DurationDiscount(3, 6, new BigDecimal(5)));
+        pricing.addDiscount(new DurationDiscount(1, 2, new BigDecimal(0)));
+        return pricing;
+    }
+
+    /**
+     * @return a SimplePricing with prices for both bike types
+     */
+    static SimplePricing makeSimplePricing(){
+        SimplePricing pricing = new SimplePricing();
+        pricing.setDailyRentalPrice(MOUNTAIN, new BigDecimal("25.50"));
+        pricing.setDailyRentalPrice(ROAD, new BigDecimal("40.00"));
+        return pricing;
+    }
+}
@@ -0,0 +1,54 @@
+package uk.ac.ed.bikerental;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the throughput of the booking ID generators, with one thread and with 8 threads
+ * all taking IDs from the same generator
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BookingIdBenchmark {
+
+    private final SequentialIdGenerator sequential = new SequentialIdGenerator();
+    private final TimeOrderedIdGenerator timeOrdered = new TimeOrderedIdGenerator(1);
+
+    @Benchmark
+    @Threads(1)
+    public String sequential(){
+        return sequential.nextId();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String sequentialContended(){
+        return sequential.nextId();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String timeOrdered(){
+        return timeOrdered.nextId();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String timeOrderedContended(){
+        return timeOrdered.nextId();
+    }
+}
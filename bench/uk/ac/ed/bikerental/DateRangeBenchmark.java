@@ -0,0 +1,54 @@
+package uk.ac.ed.bikerental;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the overlap check at the bottom of the availability checks
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DateRangeBenchmark {
+
+    private DateRange week;
+    private DateRange overlapping;
+    private DateRange later;
+
+    @Setup
+    public void setUp(){
+        LocalDate today = LocalDate.now();
+        week = new DateRange(today, today.plusDays(7));
+        overlapping = new DateRange(today.plusDays(5), today.plusDays(9));
+        later = new DateRange(today.plusDays(10), today.plusDays(12));
+    }
+
+    @Benchmark
+    public boolean overlaps(){
+        return week.overlaps(overlapping);
+    }
+
+    @Benchmark
+    public boolean doesNotOverlap(){
+        return week.overlaps(later);
+    }
+
+    @Benchmark
+    public long toDays(){
+        return week.toDays();
+    }
+}
@@ -0,0 +1,67 @@
+package uk.ac.ed.bikerental;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks retiring a batch of bikes from the middle of a fleet and stocking them again, one bike at a
+ * time and in bulk
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FleetChurnBenchmark {
+
+    @Param({"10000", "100000"})
+    public int fleetSize;
+
+    @Param({"1000"})
+    public int batchSize;
+
+    private BikeProvider provider;
+    private ArrayList<Bike> batch;
+
+    @Setup
+    public void setUp(){
+        provider = BenchmarkFleets.makeProvider("Churn Cycles", "EH1 1AA", fleetSize, 4);
+        List<Bike> road = provider.getBikeStocks().get(BenchmarkFleets.ROAD);
+        batch = new ArrayList<Bike>();
+        for (int i=0; i<batchSize; i++){
+            batch.add(road.get(i * (road.size() / batchSize)));
+        }
+    }
+
+    @Benchmark
+    public int oneAtATime(){
+        for (Bike b : batch){
+            provider.removeBike(b);
+        }
+        for (Bike b : batch){
+            provider.addBike(b);
+        }
+        return provider.getBikeStocks().get(BenchmarkFleets.ROAD).size();
+    }
+
+    @Benchmark
+    public int bulk(){
+        provider.removeBikes(batch);
+        provider.addBikes(batch);
+        return provider.getBikeStocks().get(BenchmarkFleets.ROAD).size();
+    }
+}
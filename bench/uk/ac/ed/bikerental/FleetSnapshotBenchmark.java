@@ -0,0 +1,82 @@
+package uk.ac.ed.bikerental;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks saving a fleet spread over 10 providers and loading it back from a file, which is the cold
+ * start cost. Each bike has 10 bookings. The size of the snapshot is reported as the secondary result snapshotBytes
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FleetSnapshotBenchmark {
+
+    @Param({"10000", "100000"})
+    public int fleetSize;
+
+    private ArrayList<BikeProvider> providers;
+    private Path file;
+
+    /**
+     * Holds the size of the last snapshot encoded
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        public long snapshotBytes;
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        providers = new ArrayList<BikeProvider>();
+        for (int i=0; i<10; i++){
+            providers.add(BenchmarkFleets.makeProvider("Provider " + i, "EH" + i + " 1AA", fleetSize / 10, 10));
+        }
+        for (BikeProvider p : providers){
+            p.addPartner(providers.get(0));
+        }
+        file = Files.createTempFile("fleet", ".snap");
+        FleetSnapshot.write(providers, file);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public ByteBuffer encode(Counters counters){
+        ByteBuffer snapshot = FleetSnapshot.encode(providers);
+        counters.snapshotBytes = snapshot.remaining();
+        return snapshot;
+    }
+
+    @Benchmark
+    public ArrayList<BikeProvider> coldStart() throws IOException {
+        return FleetSnapshot.read(file, Arrays.asList(BenchmarkFleets.MOUNTAIN, BenchmarkFleets.ROAD),
+                new SimpleValuation(), new MockDeliveryService());
+    }
+}
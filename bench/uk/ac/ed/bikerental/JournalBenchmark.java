@@ -0,0 +1,109 @@
+package uk.ac.ed.bikerental;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the write throughput of the journal, appending only and appending then committing.
+ * With 8 threads committing at once the commits are grouped, so there are far fewer flushes than events.
+ * The events and flushes of each iteration are reported as the secondary results events and flushes
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JournalBenchmark {
+
+    private Path directory;
+    private Journal journal;
+    private BikeProvider provider;
+    private BikeType type;
+    private BigDecimal price;
+
+    /**
+     * Reports how many events and flushes the journal did in an iteration.
+     * The journal's counters are shared, so only the first thread reports them
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        private Journal journal;
+        private long eventsAtStart;
+        private long syncsAtStart;
+
+        @Setup(Level.Iteration)
+        public void start(JournalBenchmark bench, ThreadParams threads){
+            journal = threads.getThreadIndex() == 0 ? bench.journal : null;
+            if (journal != null){
+                eventsAtStart = journal.getEventsWritten();
+                syncsAtStart = journal.getSyncs();
+            }
+        }
+
+        public long events(){
+            return journal == null ? 0 : journal.getEventsWritten() - eventsAtStart;
+        }
+
+        public long flushes(){
+            return journal == null ? 0 : journal.getSyncs() - syncsAtStart;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("journal-bench");
+        journal = new Journal(directory);
+        provider = BenchmarkFleets.makeProvider("Journal Bikes", "EH1 1AA", 0, 0);
+        type = BenchmarkFleets.ROAD;
+        price = new BigDecimal("12.50");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        journal.close();
+        JournalRecoveryBenchmark.deleteAll(directory);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long append(Counters counters){
+        return journal.recordPrice(provider, type, price);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long appendAndCommit(Counters counters){
+        long seq = journal.recordPrice(provider, type, price);
+        journal.commit(seq);
+        return seq;
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long appendAndCommitContended(Counters counters){
+        long seq = journal.recordPrice(provider, type, price);
+        journal.commit(seq);
+        return seq;
+    }
+}
@@ -0,0 +1,110 @@
+package uk.ac.ed.bikerental;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Benchmarks recovering a fleet from its journal, replaying every event and loading a snapshot then
+ * replaying only the events after it
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JournalRecoveryBenchmark {
+
+    @Param({"1000", "10000"})
+    public int bookings;
+
+    private Path eventsOnly;
+    private Path withSnapshot;
+
+    @Setup
+    public void setUp() throws IOException {
+        eventsOnly = Files.createTempDirectory("journal-events");
+        withSnapshot = Files.createTempDirectory("journal-snapshot");
+        record(eventsOnly, false);
+        record(withSnapshot, true);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        deleteAll(eventsOnly);
+        deleteAll(withSnapshot);
+    }
+
+    @Benchmark
+    public Journal.Recovery replayEvents() throws IOException {
+        return Journal.recover(eventsOnly, Arrays.asList(makeProvider()), types());
+    }
+
+    @Benchmark
+    public Journal.Recovery loadSnapshot() throws IOException {
+        return Journal.recover(withSnapshot, Arrays.asList(makeProvider()), types());
+    }
+
+    private static BikeProvider makeProvider() {
+        return BenchmarkFleets.makeProvider("Journal Bikes", "EH1 1AA", 0, 0);
+    }
+
+    private static ArrayList<BikeType> types() {
+        return new ArrayList<BikeType>(Arrays.asList(BenchmarkFleets.MOUNTAIN, BenchmarkFleets.ROAD));
+    }
+
+    /**
+     * Journals a fleet of 100 bikes and the given number of one day bookings spread over the following days,
+     * with the last tenth of the bookings made after the snapshot if there is one
+     */
+    private void record(Path directory, boolean snapshot) throws IOException {
+        BikeProvider provider = makeProvider();
+        Customer customer = new Customer("Bench", "Mark", new Location("EH2 2BB", "2 Bench Rd."));
+        try (Journal journal = new Journal(directory)) {
+            provider.setJournal(journal);
+            for (int i=0; i<100; i++){
+                provider.addBike(new Bike(i % 2 == 0 ? BenchmarkFleets.MOUNTAIN : BenchmarkFleets.ROAD));
+            }
+            provider.setDailyRentalPrice(BenchmarkFleets.ROAD, new BigDecimal(30));
+            LocalDate first = LocalDate.now().plusDays(1);
+            for (int i=0; i<bookings; i++){
+                if (snapshot && i == bookings - bookings / 10) journal.snapshot(Arrays.asList(provider));
+                LocalDate start = first.plusDays(i / 50);
+                HashMap<BikeType, Integer> wanted = new HashMap<BikeType, Integer>();
+                wanted.put(i % 2 == 0 ? BenchmarkFleets.MOUNTAIN : BenchmarkFleets.ROAD, 1);
+                Quote q = provider.generateQuote(wanted, new DateRange(start, start.plusDays(1)));
+                if (q != null) customer.makeBooking(q, null, true);
+            }
+        }
+    }
+
+    static void deleteAll(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(p);
+            }
+        }
+    }
+}
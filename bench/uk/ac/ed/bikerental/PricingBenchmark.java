@@ -0,0 +1,59 @@
+package uk.ac.ed.bikerental;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks both pricing policies for orders of different sizes
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PricingBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    public int fleetSize;
+
+    private DiscountedPricing discountedPricing;
+    private SimplePricing simplePricing;
+    private ArrayList<Bike> bikes;
+    private DateRange dates;
+
+    @Setup
+    public void setUp(){
+        discountedPricing = BenchmarkFleets.makeDiscountedPricing();
+        simplePricing = BenchmarkFleets.makeSimplePricing();
+        bikes = new ArrayList<Bike>();
+        for (int i=0; i<fleetSize; i++){
+            bikes.add(new Bike(i % 2 == 0 ? BenchmarkFleets.MOUNTAIN : BenchmarkFleets.ROAD));
+        }
+        dates = new DateRange(LocalDate.now(), LocalDate.now().plusDays(8));
+    }
+
+    @Benchmark
+    public BigDecimal discountedPricing(){
+        return discountedPricing.calculatePrice(bikes, dates);
+    }
+
+    @Benchmark
+    public BigDecimal simplePricing(){
+        return simplePricing.calculatePrice(bikes, dates);
+    }
+}
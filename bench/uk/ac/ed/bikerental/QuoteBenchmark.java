@@ -0,0 +1,62 @@
+package uk.ac.ed.bikerental;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks quote generation at a single provider and the availability check of a single bike
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QuoteBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int fleetSize;
+
+    @Param({"0", "10", "100"})
+    public int bookingsPerBike;
+
+    private BikeProvider provider;
+    private HashMap<BikeType, Integer> bikesWanted;
+    private DateRange dates;
+    private Bike bike;
+
+    @Setup
+    public void setUp(){
+        provider = BenchmarkFleets.makeProvider("Bench Bikes", "EH8 9AB", fleetSize, bookingsPerBike);
+        bike = provider.getBikeStocks().get(BenchmarkFleets.MOUNTAIN).get(0);
+
+        // A quarter of the bikes are free for any two day range, ask for a fifth of them
+        bikesWanted = new HashMap<BikeType, Integer>();
+        bikesWanted.put(BenchmarkFleets.MOUNTAIN, Math.max(1, fleetSize / 10));
+        bikesWanted.put(BenchmarkFleets.ROAD, Math.max(1, fleetSize / 10));
+        dates = new DateRange(LocalDate.now().plusDays(1), LocalDate.now().plusDays(2));
+    }
+
+    @Benchmark
+    public Quote generateQuote(){
+        return provider.generateQuote(bikesWanted, dates);
+    }
+
+    @Benchmark
+    public boolean checkFree(){
+        return bike.checkFree(dates);
+    }
+}
@@ -0,0 +1,60 @@
+package uk.ac.ed.bikerental;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a generated stream of searches, bookings and returns against a generated deployment.
+ * The deployment is rebuilt before every iteration so each replay starts from the same state
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReplayBenchmark {
+
+    @Param({"100", "1000"})
+    public int providerCount;
+
+    @Param({"50"})
+    public int bikesPerProvider;
+
+    @Param({"10", "100"})
+    public int bookingsPerBike;
+
+    @Param({"10000"})
+    public int operationCount;
+
+    private WorkloadGenerator.Deployment deployment;
+    private List<WorkloadGenerator.Operation> operations;
+
+    @Setup(Level.Iteration)
+    public void setUp(){
+        WorkloadGenerator generator = new WorkloadGenerator(1234)
+                .setProviderCount(providerCount)
+                .setBikesPerProvider(bikesPerProvider)
+                .setBookingsPerBike(bookingsPerBike);
+        deployment = generator.generate(new MockDeliveryService());
+        operations = generator.operations(deployment, operationCount, 0.6, 0.1);
+    }
+
+    @Benchmark
+    public WorkloadGenerator.ReplayResult replay(){
+        return WorkloadGenerator.replay(deployment, operations);
+    }
+}
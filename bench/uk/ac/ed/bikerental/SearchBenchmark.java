@@ -0,0 +1,78 @@
+package uk.ac.ed.bikerental;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks a customer search across many providers, a tenth of which are near the customer
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchBenchmark {
+
+    private static final String[] AREAS = {"EH", "KY", "BT", "HU", "AB", "DD", "FK", "IV", "PA", "TD"};
+
+    @Param({"10", "100", "1000"})
+    public int providerCount;
+
+    @Param({"20"})
+    public int fleetSize;
+
+    @Param({"0", "10"})
+    public int bookingsPerBike;
+
+    private ArrayList<BikeProvider> providers;
+    private Location customerLocation;
+    private HashMap<BikeType, Integer> bikesWanted;
+    private DateRange dates;
+
+    @Setup
+    public void setUp(){
+        providers = new ArrayList<BikeProvider>();
+        for (int i=0; i<providerCount; i++){
+            String postcode = AREAS[i % AREAS.length] + (i % 20 + 1) + " 1AA";
+            providers.add(BenchmarkFleets.makeProvider("Provider " + i, postcode, fleetSize, bookingsPerBike));
+        }
+        customerLocation = new Location("EH1 1AA", "");
+
+        bikesWanted = new HashMap<BikeType, Integer>();
+        bikesWanted.put(BenchmarkFleets.MOUNTAIN, 2);
+        bikesWanted.put(BenchmarkFleets.ROAD, 1);
+        dates = new DateRange(LocalDate.now().plusDays(1), LocalDate.now().plusDays(2));
+    }
+
+    @Benchmark
+    public Collection<Quote> getQuotes(){
+        return new Search(customerLocation, dates, bikesWanted, providers).getQuotes();
+    }
+
+    @Benchmark
+    public Map<BikeProvider, ArrayList<DateRange>> getAlternativeDates(){
+        return new Search(customerLocation, dates, bikesWanted, providers).getAlternativeDates(5, 60);
+    }
+
+    @Benchmark
+    public ArrayList<Quote> getCheapestQuotes(){
+        return new Search(customerLocation, dates, bikesWanted, providers).getCheapestQuotes(5);
+    }
+}
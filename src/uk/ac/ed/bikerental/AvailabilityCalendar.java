@@ -0,0 +1,322 @@
+package uk.ac.ed.bikerental;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A day-indexed calendar of which bikes of a single BikeType at a provider are booked.
+ * Each bike is given a slot (its position in the stock list) and each day in a rolling window holds a
+ * BitSet with the bit for a slot set if that bike is booked on the day. A bike keeps its slot until it is
+ * removed, when the last bike takes over its slot so the slots stay dense.
+ * This means finding the bikes free for a whole DateRange is a bitwise combination of the day bitsets,
+ * with no need to look at the bookings of each individual bike.
+ * The calendar's BookingLock guards both the bitsets and the bookings of all of its bikes.
+ */
+public class AvailabilityCalendar {
+
+    /** The number of days ahead (including today) that the calendar keeps track of by default */
+    public static final int DEFAULT_WINDOW_DAYS = 366;
+
+    private final ArrayList<Bike> bikes;
+    private final List<Bike> bikesView;
+    private final int windowDays;
+
+    /** Booked bikes per day, stored circularly so day d lives in bucket floorMod(d, windowDays) */
+    private final BitSet[] booked;
+
+    /** The epoch day of the first day in the window */
+    private volatile long origin;
+
+    private final BookingLock lock;
+
+    /** Goes up every time a bike of this type is booked, returned, added, removed or changes status */
+    private final AtomicLong version;
+
+
+    public AvailabilityCalendar(){
+        this(DEFAULT_WINDOW_DAYS);
+    }
+
+    /**
+     * Constructor creating an empty calendar whose window starts today
+     * @param windowDays the number of days to keep track of
+     */
+    public AvailabilityCalendar(int windowDays){
+        assert windowDays > 0;
+        this.bikes = new ArrayList<Bike>();
+        this.bikesView = Collections.unmodifiableList(bikes);
+        this.windowDays = windowDays;
+        this.booked = new BitSet[windowDays];
+        for (int i=0; i<windowDays; i++){
+            booked[i] = new BitSet();
+        }
+        this.origin = LocalDate.now().toEpochDay();
+        this.lock = new BookingLock();
+        this.version = new AtomicLong();
+    }
+
+    /**
+     * @return a read-only view of the bikes in the calendar, the index of each bike is its slot.
+     * The read lock should be held while looking through these
+     */
+    public List<Bike> getBikes() {
+        return bikesView;
+    }
+
+    public BookingLock getLock() {
+        return lock;
+    }
+
+    /**
+     * @return a number that changes whenever the availability of any of the bikes could have changed
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Called when the status of one of the bikes changes
+     */
+    void statusChanged() {
+        version.incrementAndGet();
+    }
+
+    /**
+     * Adds a bike to the end of the calendar and marks the days it's already booked for
+     * @param bike the bike to add
+     */
+    public void addBike(Bike bike){
+        lock.writeLock().lock();
+        try {
+            append(bike);
+            version.incrementAndGet();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds several bikes to the end of the calendar under a single lock, growing the stock list once
+     * @param added the bikes to add
+     */
+    public void addBikes(Collection<Bike> added){
+        lock.writeLock().lock();
+        try {
+            bikes.ensureCapacity(bikes.size() + added.size());
+            for (Bike b: added){
+                append(b);
+            }
+            version.incrementAndGet();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void append(Bike bike){
+        int slot = bikes.size();
+        bikes.add(bike);
+        // Until it's in the calendar the bike's bookings are guarded by its own lock, which is held while
+        // they are copied so a booking made at the same time isn't missed
+        BookingLock own = bike.getLock();
+        own.writeLock().lock();
+        try {
+            for (DateRange d: bike.bookedDates()){
+                markBooked(slot, d);
+            }
+            bike.setCalendar(this, slot);
+        }
+        finally {
+            own.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a bike from the calendar. The last bike is moved into its slot, so every other bike keeps
+     * its slot and only the days the two bikes are booked for are changed
+     * @param bike the bike to remove
+     * @return the slot the bike was in, or -1 if it wasn't in the calendar
+     */
+    public int removeBike(Bike bike){
+        lock.writeLock().lock();
+        try {
+            int slot = swapRemove(bike);
+            if (slot != -1) version.incrementAndGet();
+            return slot;
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes several bikes from the calendar under a single lock, moving the last bike into each hole
+     * @param removed the bikes to remove, any not in the calendar are ignored
+     */
+    public void removeBikes(Collection<Bike> removed){
+        lock.writeLock().lock();
+        try {
+            for (Bike b: removed){
+                swapRemove(b);
+            }
+            version.incrementAndGet();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the slot the bike was in, or -1 if it wasn't in the calendar
+     */
+    private int swapRemove(Bike bike){
+        int slot = bike.getSlot();
+        if (slot < 0 || slot >= bikes.size() || bikes.get(slot) != bike) return -1;
+        for (DateRange d: bike.bookedDates()){
+            markFree(slot, d);
+        }
+        bike.setCalendar(null, -1);
+
+        int last = bikes.size() - 1;
+        Bike moved = bikes.remove(last);
+        if (slot != last){
+            bikes.set(slot, moved);
+            for (DateRange d: moved.bookedDates()){
+                markFree(last, d);
+                markBooked(slot, d);
+            }
+            moved.setCalendar(this, slot);
+        }
+        return slot;
+    }
+
+    /**
+     * Records that the bike in the given slot is booked for the dates, the write lock must be held
+     * @param slot the slot of the booked bike
+     * @param dates the dates it is booked for
+     */
+    void markBooked(int slot, DateRange dates){
+        version.incrementAndGet();
+        long first = Math.max(dates.getStartEpochDay(), origin);
+        long last = Math.min(dates.getEndEpochDay(), origin + windowDays - 1);
+        for (long day=first; day<=last; day++){
+            booked[bucket(day)].set(slot);
+        }
+    }
+
+    /**
+     * Records that the bike in the given slot is no longer booked for the dates, the write lock must be held
+     * @param slot the slot of the bike
+     * @param dates the dates that are now free
+     */
+    void markFree(int slot, DateRange dates){
+        version.incrementAndGet();
+        long first = Math.max(dates.getStartEpochDay(), origin);
+        long last = Math.min(dates.getEndEpochDay(), origin + windowDays - 1);
+        for (long day=first; day<=last; day++){
+            booked[bucket(day)].clear(slot);
+        }
+    }
+
+    /**
+     * Finds the slots of all the bikes that are free on every day of the given dates.
+     * The booked bitsets for each day are OR'd together and the result is flipped, so this is the
+     * AND of the daily free bitsets
+     * @param dates the dates the bikes need to be free for
+     * @return a BitSet of free slots, or null if the dates are not within the calendar window
+     */
+    public BitSet freeBikes(DateRange dates){
+        rollForward();
+
+        lock.readLock().lock();
+        try {
+            long first = dates.getStartEpochDay();
+            long last = dates.getEndEpochDay();
+            if (first < origin || last >= origin + windowDays) return null;
+
+            BitSet free = new BitSet(bikes.size());
+            for (long day=first; day<=last; day++){
+                free.or(booked[bucket(day)]);
+            }
+            free.flip(0, bikes.size());
+            return free;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Counts the bikes free on every day of the given dates
+     * @param dates the dates the bikes need to be free for
+     * @return the number of free bikes, or -1 if the dates are not within the calendar window
+     */
+    public int countFree(DateRange dates){
+        BitSet free = freeBikes(dates);
+        return free == null ? -1 : free.cardinality();
+    }
+
+    /**
+     * Rolls the window forward so that it starts today.
+     * The window can't be moved while this thread holds the read lock, but a window that is
+     * behind is still correct for the days it covers so it is left until later
+     */
+    void rollForward(){
+        if (!lock.isReadLockedByCurrentThread()) advanceTo(LocalDate.now().toEpochDay());
+    }
+
+    /**
+     * Rolls the window forward so that it starts on the given day.
+     * The buckets of the days that drop off the front are reused for the new days at the end
+     * @param day the epoch day the window should start on
+     */
+    private void advanceTo(long day){
+        if (day <= origin) return;
+        lock.writeLock().lock();
+        try {
+            if (day <= origin) return;
+            if (day - origin >= windowDays){
+                origin = day;
+                rebuild();
+                return;
+            }
+            long oldEnd = origin + windowDays;
+            origin = day;
+            for (long d=oldEnd; d<origin + windowDays; d++){
+                BitSet bucket = booked[bucket(d)];
+                bucket.clear();
+                DateRange single = DateRange.ofEpochDays(d, d);
+                for (int slot=0; slot<bikes.size(); slot++){
+                    if (!bikes.get(slot).checkFree(single)) bucket.set(slot);
+                }
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Clears the whole window and marks the bookings of every bike again
+     */
+    private void rebuild(){
+        for (BitSet b: booked){
+            b.clear();
+        }
+        for (int slot=0; slot<bikes.size(); slot++){
+            for (DateRange d: bikes.get(slot).bookedDates()){
+                markBooked(slot, d);
+            }
+        }
+    }
+
+    private int bucket(long day){
+        return (int) Math.floorMod(day, (long) windowDays);
+    }
+}
@@ -1,7 +1,13 @@
 package uk.ac.ed.bikerental;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
 
 
 /**
@@ -11,71 +17,220 @@ public class Bike implements Deliverable {
 
 
     private BikeType type;
-    private String status;
-    private Collection<DateRange> datesRented;
+    private volatile BikeStatus status;
+    /** The dates the bike is booked for, keyed by start date. Bookings never overlap so this is sorted by end too */
+    private TreeMap<LocalDate, DateRange> datesRented;
 
-    public Collection<DateRange> getDatesRented() {
-        return datesRented;
+    /** The availability calendar of the provider stocking this bike, and the bike's slot in it */
+    private volatile AvailabilityCalendar calendar;
+    private int slot = -1;
+
+    /** The lock used for the bookings while the bike isn't stocked by a provider, created when first needed */
+    private BookingLock ownLock;
+
+    /**
+     * @return a copy of the dates the bike is booked for, in date order
+     */
+    public List<DateRange> getDatesRented() {
+        BookingLock lock = lockBookings(false);
+        try {
+            return Collections.unmodifiableList(new ArrayList<DateRange>(datesRented.values()));
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the dates the bike is booked for in date order, without copying them.
+     * The bike's lock must be held while these are looked through
+     */
+    Collection<DateRange> bookedDates() {
+        return datesRented.values();
     }
 
+    /**
+     * @return the name of the bike's status, eg "Available"
+     */
     public String getStatus() {
+        return status.getLabel();
+    }
+
+    public BikeStatus getBikeStatus() {
         return status;
     }
 
+    /**
+     * @return true if the bike is in the shop and can be rented
+     */
+    public boolean isAvailable() {
+        return status == BikeStatus.AVAILABLE;
+    }
+
+    /**
+     * @param status the name of the new status, eg "Available"
+     * @throws IllegalArgumentException if there's no status with that name
+     * @throws IllegalStateException if the bike can't move to the new status from its current one
+     */
     public void setStatus(String status) {
+        setBikeStatus(BikeStatus.fromLabel(status));
+    }
+
+    /**
+     * Moves the bike to a new status
+     * @param status the new status
+     * @throws IllegalStateException if the bike can't move to the new status from its current one
+     */
+    public synchronized void setBikeStatus(BikeStatus status) {
+        if (!this.status.canMoveTo(status)) {
+            throw new IllegalStateException("Bike can't go from " + this.status + " to " + status);
+        }
+        if (this.status == status) return;
+        this.status = status;
+        AvailabilityCalendar c = calendar;
+        if (c != null) c.statusChanged();
+    }
+
+    /**
+     * Sets the status without checking the transition, used when restoring a saved bike
+     * @param status the status the bike was saved with
+     */
+    void restoreStatus(BikeStatus status) {
         this.status = status;
     }
 
     /**
      * Constructor defining the bikes type.
-     * An empty list of DateRange objects is created which store all the dates that the Bike is being rented for
+     * An empty index of DateRange objects is created which store all the dates that the Bike is being rented for
      * @param type the bike's BikeType
      */
     public Bike(BikeType type){
         this.type = type;
-        this.datesRented = new ArrayList<DateRange>();
-        status = "Available";
+        this.datesRented = new TreeMap<LocalDate, DateRange>();
+        status = BikeStatus.AVAILABLE;
     }
 
     public BikeType getType() {
         return this.type;
     }
 
+    int getSlot() {
+        return slot;
+    }
+
+    /**
+     * Called by the AvailabilityCalendar when the bike is added to or removed from it
+     * so that changes to the booked dates are reflected there
+     */
+    void setCalendar(AvailabilityCalendar calendar, int slot) {
+        this.calendar = calendar;
+        this.slot = slot;
+    }
+
+    /**
+     * The bookings of a bike stocked by a provider are guarded by the lock of its BikeType at that provider,
+     * so a booking only ever blocks other bookings of the same type at the same shop
+     * @return the lock guarding the dates the bike is booked for
+     */
+    public BookingLock getLock() {
+        AvailabilityCalendar c = calendar;
+        if (c != null) return c.getLock();
+        synchronized (this) {
+            if (ownLock == null) ownLock = BookingLock.forUnstockedBike();
+            return ownLock;
+        }
+    }
+
+    /**
+     * Takes the lock guarding the bike's bookings. The bike can be stocked or unstocked while this thread
+     * waits for the lock, in which case the lock it got is no longer the right one and it tries again
+     * @param write true for the write lock, false for the read lock
+     * @return the lock that was taken, to be unlocked by the caller
+     */
+    private BookingLock lockBookings(boolean write){
+        while (true) {
+            BookingLock lock = getLock();
+            Lock l = write ? lock.writeLock() : lock.readLock();
+            l.lock();
+            if (getLock() == lock) return lock;
+            l.unlock();
+        }
+    }
+
     /**
      * Checks if a bike is free to be booked for a given DateRange
+     * Since the bookings don't overlap, only the booking starting latest on or before the end of the
+     * given dates can overlap with them, so this is a single O(log n) lookup
      * @param dates the DateRange to check
      * @return true if the bike is free on the input dates, otherwise false
      */
     public boolean checkFree(DateRange dates){
-        for (DateRange d: datesRented){
-            if (d.overlaps(dates)) return false;
+        BookingLock lock = lockBookings(false);
+        try {
+            Map.Entry<LocalDate, DateRange> candidate = datesRented.floorEntry(dates.getEnd());
+            return candidate == null || !candidate.getValue().overlaps(dates);
+        }
+        finally {
+            lock.readLock().unlock();
         }
-        return true;
     }
 
     /**
      * Add a DateRange into the dates the bike is booked for
      * @param date the DateRange to add
+     * @throws IllegalStateException if the bike is already booked for any of the dates
      */
     public void addToDates(DateRange date){
-        datesRented.add(date);
+        BookingLock lock = lockBookings(true);
+        try {
+            if (!checkFree(date)) {
+                throw new IllegalStateException("Bike is already booked between " + date.getStart() + " and " + date.getEnd());
+            }
+            datesRented.put(date.getStart(), date);
+            // The calendar and slot can't change while its lock (or the bike's own lock) is held
+            AvailabilityCalendar c = calendar;
+            if (c != null) c.markBooked(slot, date);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a DateRange the bike was saved as booked for, without checking or locking.
+     * Only used while restoring a bike before it's stocked by a provider, when no other thread can see it
+     * @param date the DateRange to add, which mustn't overlap the dates already added
+     */
+    void restoreDate(DateRange date){
+        assert calendar == null;
+        datesRented.put(date.getStart(), date);
     }
 
     /**
      * Remove a DateRange from the dates the bike is booked for
+     * Nothing happens if the bike isn't booked for exactly these dates
      * @param date the DateRange to remove
      */
     public void removeFromDates(DateRange date){
-        datesRented.remove(date);
+        BookingLock lock = lockBookings(true);
+        try {
+            AvailabilityCalendar c = calendar;
+            if (datesRented.remove(date.getStart(), date) && c != null) {
+                c.markFree(slot, date);
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
     }
 
     @Override
     public void onPickup() {
-        setStatus("Out for Delivery");
+        setBikeStatus(BikeStatus.OUT_FOR_DELIVERY);
     }
 
     @Override
     public void onDropoff() {
-        setStatus("Delivered");
+        setBikeStatus(BikeStatus.DELIVERED);
     }
 }
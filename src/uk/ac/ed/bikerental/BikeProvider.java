@@ -3,6 +3,7 @@ package uk.ac.ed.bikerental;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
@@ -15,9 +16,18 @@ public class BikeProvider {
 	private Location location;
 	private PricingPolicy pricing;
 	private ValuationPolicy valuation;
-	private HashMap<BikeType, ArrayList<Bike>> bikeStocks;
+	private ConcurrentHashMap<BikeType, List<Bike>> bikeStocks;
+	/** The read-only view of bikeStocks handed out, so stock can only change through addBike and removeBike */
+	private Map<BikeType, List<Bike>> bikeStocksView;
+	/** The availability calendar of each stocked type indexed by BikeType ID, copied when a type is added */
+	private volatile AvailabilityCalendar[] availability;
 	private Collection<BikeProvider> partners;
 	private DeliveryService deliveryService;
+	private volatile QuoteCache quoteCache;
+	/** The bookings that can be returned here, both this provider's own and those returned here as a partner */
+	private BookingRegistry bookings;
+	/** Records the changes made to this provider, or null if they aren't journaled */
+	private volatile Journal journal;
 
 
 	/**A constructor taking all the attribute of a bike provider and initialising the required collections and maps
@@ -34,8 +44,11 @@ public class BikeProvider {
 		this.pricing = pricing;
 		this.valuation = valuation;
 		this.deliveryService = deliveryService;
-		this.bikeStocks = new HashMap<BikeType, ArrayList<Bike>>();
+		this.bikeStocks = new ConcurrentHashMap<BikeType, List<Bike>>();
+		this.bikeStocksView = Collections.unmodifiableMap(bikeStocks);
+		this.availability = new AvailabilityCalendar[0];
 		this.partners = new ArrayList<BikeProvider>();
+		this.bookings = new BookingRegistry();
 
 	}
 
@@ -65,6 +78,23 @@ public class BikeProvider {
 		return pricing;
 	}
 
+	public BookingRegistry getBookings() {
+		return bookings;
+	}
+
+	public Journal getJournal() {
+		return journal;
+	}
+
+	/**
+	 * Starts recording the bikes added and removed, bookings made and returned and prices set with this
+	 * provider in a journal. Any saved state should be recovered before this is called
+	 * @param journal the journal to record changes in, or null to stop recording them
+	 */
+	public void setJournal(Journal journal) {
+		this.journal = journal;
+	}
+
 	public DeliveryService getDeliveryService() {
 		return deliveryService;
 	}
@@ -75,14 +105,66 @@ public class BikeProvider {
 
 	public void setPricing(PricingPolicy pricing) {
 		this.pricing = pricing;
+		QuoteCache cache = quoteCache;
+		if (cache != null) cache.invalidateAll();
 	}
 
 	public void setValuation(ValuationPolicy valuation) {
 		this.valuation = valuation;
+		QuoteCache cache = quoteCache;
+		if (cache != null) cache.invalidateAll();
 	}
 
-	public HashMap<BikeType, ArrayList<Bike>> getBikeStocks() {
-		return bikeStocks;
+	/**
+	 * Puts a QuoteCache in front of generateQuote so repeated searches reuse quotes while the stock they
+	 * depend on hasn't changed. Prices changed in place on the current PricingPolicy are only picked up once
+	 * the cached quotes expire, so use setPricing or setDailyRentalPrice to change prices while the cache is on
+	 * @param maxEntries the most quotes to keep
+	 * @param ttlMillis how long a quote can be reused for in milliseconds
+	 */
+	public void enableQuoteCache(int maxEntries, long ttlMillis) {
+		this.quoteCache = new QuoteCache(this, maxEntries, ttlMillis);
+	}
+
+	public void disableQuoteCache() {
+		this.quoteCache = null;
+	}
+
+	/**
+	 * @return the quote cache, or null if it isn't enabled
+	 */
+	public QuoteCache getQuoteCache() {
+		return quoteCache;
+	}
+
+	/**
+	 * @return a read-only map from each BikeType to the bikes of that type, the read lock of the
+	 * type's calendar should be held while looking through a list. Bikes are added and removed with
+	 * addBike and removeBike, which keep the calendars in step
+	 */
+	public Map<BikeType, List<Bike>> getBikeStocks() {
+		return bikeStocksView;
+	}
+
+	/**
+	 * @param type the BikeType to get the calendar of
+	 * @return the availability calendar for the type, or null if the provider has never stocked it
+	 */
+	public AvailabilityCalendar getAvailability(BikeType type) {
+		return BikeTypeRegistry.lookup(availability, type);
+	}
+
+	/**
+	 * Creates the calendar and stock list of a type the first time it is stocked
+	 */
+	private synchronized AvailabilityCalendar addCalendar(BikeType type) {
+		AvailabilityCalendar calendar = getAvailability(type);
+		if (calendar != null) return calendar;
+		calendar = new AvailabilityCalendar();
+		// The calendar is published first so every type in bikeStocks has one
+		availability = BikeTypeRegistry.withEntry(availability, type.getId(), calendar);
+		bikeStocks.put(type, calendar.getBikes());
+		return calendar;
 	}
 
 	/**
@@ -101,18 +183,142 @@ public class BikeProvider {
 		if (partners.contains(partner)) partners.remove(partner);
 	}
 
+	/**
+	 * Adds a bike to the stock of its type, creating the stock list and availability calendar
+	 * the first time the type is seen. The stock list is shared with the calendar
+	 * Only the lock of the bike's type is taken, so stock changes of other types aren't held up
+	 * @param bike the bike to add
+	 */
 	public void addBike(Bike bike){
-		if (bikeStocks.containsKey(bike.getType())) bikeStocks.get(bike.getType()).add(bike);
-		else {
-			bikeStocks.put(bike.getType(), new ArrayList<Bike>());
-			addBike(bike);
+		AvailabilityCalendar calendar = getAvailability(bike.getType());
+		if (calendar == null) calendar = addCalendar(bike.getType());
+		Journal j = journal;
+		if (j == null){
+			calendar.addBike(bike);
+			return;
+		}
+
+		// The change is journaled before the lock is released so events are in the same order as the changes
+		long seq;
+		calendar.getLock().writeLock().lock();
+		try {
+			calendar.addBike(bike);
+			seq = j.recordBikeAdded(this, bike);
+		}
+		finally {
+			calendar.getLock().writeLock().unlock();
 		}
+		j.commit(seq);
 	}
 
 	public void removeBike(Bike bike){
-		if (bikeStocks.containsKey(bike.getType())){
-			bikeStocks.get(bike.getType()).remove(bike);
+		AvailabilityCalendar calendar = getAvailability(bike.getType());
+		if (calendar == null) return;
+		Journal j = journal;
+		if (j == null){
+			calendar.removeBike(bike);
+			return;
+		}
+
+		long seq;
+		calendar.getLock().writeLock().lock();
+		try {
+			int slot = calendar.removeBike(bike);
+			if (slot == -1) return;
+			seq = j.recordBikeRemoved(this, bike.getType(), slot);
+		}
+		finally {
+			calendar.getLock().writeLock().unlock();
+		}
+		j.commit(seq);
+	}
+
+	/**
+	 * Adds many bikes at once. The bikes of each type are added under a single lock with the stock list
+	 * grown once, and a journal is only committed to once at the end
+	 * @param added the bikes to add
+	 */
+	public void addBikes(Collection<Bike> added){
+		Journal j = journal;
+		long seq = 0;
+		for (Map.Entry<BikeType, ArrayList<Bike>> e : groupByType(added).entrySet()){
+			AvailabilityCalendar calendar = getAvailability(e.getKey());
+			if (calendar == null) calendar = addCalendar(e.getKey());
+			if (j == null){
+				calendar.addBikes(e.getValue());
+				continue;
+			}
+			calendar.getLock().writeLock().lock();
+			try {
+				calendar.addBikes(e.getValue());
+				for (Bike b : e.getValue()){
+					seq = j.recordBikeAdded(this, b);
+				}
+			}
+			finally {
+				calendar.getLock().writeLock().unlock();
+			}
+		}
+		if (j != null && seq != 0) j.commit(seq);
+	}
+
+	/**
+	 * Removes many bikes at once. The bikes of each type are removed under a single lock, each in
+	 * constant time, and a journal is only committed to once at the end
+	 * @param removed the bikes to remove, any not stocked here are ignored
+	 */
+	public void removeBikes(Collection<Bike> removed){
+		Journal j = journal;
+		long seq = 0;
+		for (Map.Entry<BikeType, ArrayList<Bike>> e : groupByType(removed).entrySet()){
+			AvailabilityCalendar calendar = getAvailability(e.getKey());
+			if (calendar == null) continue;
+			if (j == null){
+				calendar.removeBikes(e.getValue());
+				continue;
+			}
+			// Each removal is journaled with the slot the bike was in at the time, so replaying them in
+			// order moves the same bikes into the same slots
+			calendar.getLock().writeLock().lock();
+			try {
+				for (Bike b : e.getValue()){
+					int slot = calendar.removeBike(b);
+					if (slot != -1) seq = j.recordBikeRemoved(this, e.getKey(), slot);
+				}
+			}
+			finally {
+				calendar.getLock().writeLock().unlock();
+			}
+		}
+		if (j != null && seq != 0) j.commit(seq);
+	}
+
+	private static LinkedHashMap<BikeType, ArrayList<Bike>> groupByType(Collection<Bike> bikes){
+		LinkedHashMap<BikeType, ArrayList<Bike>> byType = new LinkedHashMap<BikeType, ArrayList<Bike>>();
+		for (Bike b : bikes){
+			byType.computeIfAbsent(b.getType(), t -> new ArrayList<Bike>()).add(b);
 		}
+		return byType;
+	}
+
+	/**
+	 * Sets the daily rental price of a BikeType in the provider's PricingPolicy, adding the type to a
+	 * DiscountedPricing if it doesn't have a price yet. Cached quotes are thrown away since they have
+	 * the old price
+	 * @param type the BikeType to set the price of
+	 * @param price the new daily price
+	 */
+	public void setDailyRentalPrice(BikeType type, BigDecimal price){
+		PricingPolicy p = pricing;
+		if (p instanceof DiscountedPricing && !((DiscountedPricing) p).getDailyPrices().containsKey(type)){
+			((DiscountedPricing) p).addBikeTypeToPrices(type, price);
+		}
+		else p.setDailyRentalPrice(type, price);
+		QuoteCache cache = quoteCache;
+		if (cache != null) cache.invalidateAll();
+
+		Journal j = journal;
+		if (j != null) j.commit(j.recordPrice(this, type, price));
 	}
 
 	/**
@@ -122,34 +328,119 @@ public class BikeProvider {
 	 * @return a related Quote object or null if no suitable quotes found
 	 */
 	public Quote generateQuote(Map<BikeType, Integer> bikesWanted, DateRange dates) {
+		QuoteCache cache = quoteCache;
+		if (cache == null) return calculateQuote(bikesWanted, dates);
+
+		QuoteCache.Entry cached = cache.get(bikesWanted, dates);
+		if (cached != null) return cached.getQuote();
+
+		// The entry records the state of the stock before the quote is worked out
+		QuoteCache.Entry entry = cache.prepare(bikesWanted, dates);
+		Quote quote = calculateQuote(bikesWanted, dates);
+		cache.put(entry, quote);
+		return quote;
+	}
+
+	/**
+	 * Finds the dates closest to the ones wanted that the provider could rent out the bikes for the same
+	 * length of time. The days each type can start on are found in one sweep over the bookings of its bikes,
+	 * so the cost depends on the number of bookings rather than the number of days looked through.
+	 * Rentals can start up to searchDays either side of the wanted start, but not before today
+	 * @param bikesWanted a map of the BikeTypes wanted to the quantity wanted
+	 * @param dates the dates wanted
+	 * @param maxWindows the most alternatives to return
+	 * @param searchDays how many days either side of the wanted start to look
+	 * @return up to maxWindows DateRanges the bikes are free for, closest first, which includes the dates
+	 * wanted if they are free
+	 */
+	public ArrayList<DateRange> findAlternativeDates(Map<BikeType, Integer> bikesWanted, DateRange dates, int maxWindows, int searchDays){
+		long length = dates.toDays();
+		long desired = dates.getStartEpochDay();
+		long[] starts = {Math.max(desired - searchDays, LocalDate.now().toEpochDay()), desired + searchDays};
+		if (starts[0] > starts[1]) return new ArrayList<DateRange>();
+
+		for (Map.Entry<BikeType, Integer> wanted : bikesWanted.entrySet()){
+			if (wanted.getValue() <= 0) continue;
+			AvailabilityCalendar calendar = getAvailability(wanted.getKey());
+			if (calendar == null) return new ArrayList<DateRange>();
+
+			calendar.getLock().readLock().lock();
+			try {
+				starts = FreeWindows.intersect(starts, FreeWindows.feasibleStarts(calendar.getBikes(),
+						wanted.getValue(), length, starts[0], starts[starts.length - 1]));
+			}
+			finally {
+				calendar.getLock().readLock().unlock();
+			}
+			if (starts.length == 0) return new ArrayList<DateRange>();
+		}
+		return FreeWindows.closest(starts, desired, length, maxWindows);
+	}
+
+	/**
+	 * Works out a quote by finding enough free bikes and pricing them
+	 * @param bikesWanted a map of the BikeTypes wanted to the quantity wanted
+	 * @param dates the DateRange to quote for
+	 * @return a related Quote object or null if no suitable quotes found
+	 */
+	private Quote calculateQuote(Map<BikeType, Integer> bikesWanted, DateRange dates) {
 
 		// This is a list of the Bike objects that are going to be in the Quote
 		ArrayList<Bike> bikesToQuote = new ArrayList<Bike>();
 
-		// First we loop through all the BikeTypes offered by the provider
-		for (BikeType k : bikeStocks.keySet()){
+		// First we loop through all the BikeTypes wanted, finding each one's calendar straight from its ID
+		for (Map.Entry<BikeType, Integer> wanted : bikesWanted.entrySet()){
 
-			// Checks if this is a BikeType wanted in the search
-			if (bikesWanted.containsKey(k)){
+			// Only the BikeTypes offered by the provider have a calendar
+			AvailabilityCalendar calendar = getAvailability(wanted.getKey());
+			if (calendar != null){
 
 				// The quantity of bikes of this type currently wanted
 				// This will decrease when we find more suitable Bikes to add to the quote
-				int amountWanted = bikesWanted.get(k);
+				int amountWanted = wanted.getValue();
 
 				// These are all the Bikes we look at, all the bikes of the current type we're looking at
-				ArrayList<Bike> bikesOfWantedType = bikeStocks.get(k);
-
-				int counter = 0;
-
-				// We loop through all the bikesOfType and check if they're free for the given dates
-				// If they are then we add the Bike to the bikesToQuote list and decrease amount wanted
-				while (amountWanted > 0 && counter < bikesOfWantedType.size()){
-					Bike b = bikesOfWantedType.get(counter);
-					if (b.checkFree(dates) && (b.getStatus().equals("Available"))) {
-						bikesToQuote.add(b);
-						amountWanted --;
+				List<Bike> bikesOfWantedType = calendar.getBikes();
+
+				// We only hold the read lock of this type while choosing bikes, so other quotes can be generated
+				// at the same time. The bikes chosen are checked again when the quote is booked
+				calendar.rollForward();
+				calendar.getLock().readLock().lock();
+				try {
+					// The calendar gives us the slots of the bikes free for the whole DateRange in one go
+					// If there aren't enough of them we can stop without looking at any bikes
+					BitSet free = calendar.freeBikes(dates);
+
+					if (free != null){
+						if (free.cardinality() < amountWanted) return null;
+
+						// We only need to check the status of the free bikes
+						for (int slot = free.nextSetBit(0); amountWanted > 0 && slot >= 0; slot = free.nextSetBit(slot + 1)){
+							Bike b = bikesOfWantedType.get(slot);
+							if (b.isAvailable()) {
+								bikesToQuote.add(b);
+								amountWanted --;
+							}
+						}
 					}
-					counter++;
+					else {
+						// The dates are outside of the calendar window so we have to check each bike
+						int counter = 0;
+
+						// We loop through all the bikesOfType and check if they're free for the given dates
+						// If they are then we add the Bike to the bikesToQuote list and decrease amount wanted
+						while (amountWanted > 0 && counter < bikesOfWantedType.size()){
+							Bike b = bikesOfWantedType.get(counter);
+							if (b.checkFree(dates) && b.isAvailable()) {
+								bikesToQuote.add(b);
+								amountWanted --;
+							}
+							counter++;
+						}
+					}
+				}
+				finally {
+					calendar.getLock().readLock().unlock();
 				}
 
 				// If we don't find all the Bikes wanted null is returned
@@ -164,10 +455,13 @@ public class BikeProvider {
 
 
 		// The PricingPolicy and ValuationPolicy are used to find the price and deposit
-		BigDecimal price = pricing.calculatePrice(bikesToQuote, dates);
+		// The price only depends on the number of bikes of each type, which is exactly what was asked for
+		BigDecimal price = pricing.calculatePrice(bikesWanted, dates);
+		// The deposit is valued once for the day rather than asking for the date again for every bike
+		LocalDate valuationDate = LocalDate.now();
 		BigDecimal deposit = new BigDecimal(0);
 		for (Bike b : bikesToQuote){
-			deposit = deposit.add(valuation.calculateValue(b, LocalDate.now()));
+			deposit = deposit.add(valuation.calculateValue(b, valuationDate));
 		}
 
 		return new Quote(this, dates, bikesToQuote, price, deposit);
@@ -175,26 +469,97 @@ public class BikeProvider {
 
 	/**
 	 * Records the return of a bike order in the system by removing the dates from each Bike.dates
-	 * and updating order status
+	 * and updating order status. The booking is then removed from the booking registries.
+	 * A booking that has already been returned is left alone, since its bikes may be out on a newer booking by now
 	 * @param bikeReturn the BookedQuote
+	 * @return false if the booking had already been returned
 	 */
-	public void returnBikes(BookedQuote bikeReturn){
+	public boolean returnBikes(BookedQuote bikeReturn){
 		DateRange datesRented = bikeReturn.getDates();
-		for (Bike b: bikeReturn.getBikes()){
-			b.removeFromDates(datesRented);
-			b.setStatus("Available");
+		Journal j = journal;
+		long seq = 0;
+		ArrayList<BookingLock> locks = BookingLock.lockAll(BookingLock.locksFor(bikeReturn.getBikes()));
+		try {
+			if (bikeReturn.getBookingStatus() == BookingStatus.RETURNED) return false;
+			for (Bike b: bikeReturn.getBikes()){
+				b.removeFromDates(datesRented);
+				b.setBikeStatus(BikeStatus.AVAILABLE);
+			}
+			bikeReturn.setBookingStatus(BookingStatus.RETURNED);
+			// Returned bookings are forgotten so the registries don't grow forever
+			bookings.remove(bikeReturn);
+			BookingRegistry.getGlobal().remove(bikeReturn);
+			BikeProvider partner = bikeReturn.getPartnerToReturnTo();
+			if (partner != null) partner.getBookings().remove(bikeReturn);
+			if (j != null) seq = j.recordReturn(bikeReturn);
 		}
-		bikeReturn.setStatus("Returned");
+		finally {
+			BookingLock.unlockAll(locks);
+		}
+		if (j != null) j.commit(seq);
+		return true;
 	}
 
 	/**
 	 * Schedules a delivery of the order to the customer if they requested that it be delivered
+	 * All the bikes in the order are sent to the delivery service together
 	 * @param booking the BookedQuote that needs to be delivered
 	 */
 	public void scheduleDeliveryToCustomer(BookedQuote booking){
-		for (Bike b: booking.getBikes()) {
-			deliveryService.scheduleDelivery(b, location, booking.getCustomer().getAddress(), booking.getDates().getStart());
+		deliveryService.scheduleDeliveries(booking.getBikes(), location, booking.getCustomer().getAddress(), booking.getDates().getStart());
+	}
+
+	/**
+	 * Schedules the deliveries of several orders to their customers together
+	 * The bikes of orders going to the same address on the same day are sent to the delivery service together
+	 * @param bookings the BookedQuotes that need to be delivered
+	 */
+	public void scheduleDeliveriesToCustomer(Collection<BookedQuote> bookings){
+		LinkedHashMap<Location, LinkedHashMap<LocalDate, ArrayList<Bike>>> deliveries = new LinkedHashMap<Location, LinkedHashMap<LocalDate, ArrayList<Bike>>>();
+		for (BookedQuote booking: bookings) {
+			deliveries.computeIfAbsent(booking.getCustomer().getAddress(), a -> new LinkedHashMap<LocalDate, ArrayList<Bike>>())
+					.computeIfAbsent(booking.getDates().getStart(), d -> new ArrayList<Bike>())
+					.addAll(booking.getBikes());
+		}
+		for (Map.Entry<Location, LinkedHashMap<LocalDate, ArrayList<Bike>>> address: deliveries.entrySet()) {
+			for (Map.Entry<LocalDate, ArrayList<Bike>> day: address.getValue().entrySet()) {
+				deliveryService.scheduleDeliveries(day.getValue(), location, address.getKey(), day.getKey());
+			}
+		}
+	}
+
+	/**
+	 * Records a booking that has been made with this provider, in this provider's registry and the global one
+	 * @param booking the booking that has been made
+	 */
+	void recordBooking(BookedQuote booking){
+		Journal j = journal;
+		if (j == null){
+			bookings.register(booking);
+			BookingRegistry.getGlobal().register(booking);
+			return;
+		}
+
+		long seq;
+		ArrayList<BookingLock> locks = BookingLock.lockAll(BookingLock.locksFor(booking.getBikes()));
+		try {
+			bookings.register(booking);
+			BookingRegistry.getGlobal().register(booking);
+			seq = j.recordBooking(booking);
 		}
+		finally {
+			BookingLock.unlockAll(locks);
+		}
+		j.commit(seq);
+	}
+
+	/**
+	 * Records a booking restored from a journal in this provider's registry and the global one
+	 * @param booking the restored booking
+	 */
+	void restoreBooking(BookedQuote booking){
+		bookings.restore(booking);
+		BookingRegistry.getGlobal().restore(booking);
 	}
 
 	/**
@@ -203,30 +568,45 @@ public class BikeProvider {
 	 * @param bookingID the booking id of the booking to return
 	 */
 	public void returnOrder(Customer customer, String bookingID){
-		BookedQuote bikeReturn = null;
-		for (BookedQuote bq: customer.getBookings()){
-			if (bq.getBookingID().equals(bookingID)) bikeReturn = bq;
-		}
+		BookedQuote bikeReturn = bookings.get(bookingID);
+		if (bikeReturn == null || bikeReturn.getCustomer() != customer) return;
+		returnOrder(bikeReturn);
+	}
 
-		if (bikeReturn == null) return;
+	/**
+	 * Returns an order given just its bookingID, for when the bikes are brought back without the customer
+	 * @param bookingID the booking id of the booking to return
+	 * @return true if a booking with the ID has been returned here, false if there isn't one or it had
+	 * already been returned
+	 */
+	public boolean returnOrder(String bookingID){
+		BookedQuote bikeReturn = bookings.get(bookingID);
+		if (bikeReturn == null) return false;
+		return returnOrder(bikeReturn);
+	}
 
+	/**
+	 * Returns a booking that has been brought back to this provider
+	 * @return false if the booking had already been returned
+	 */
+	private boolean returnOrder(BookedQuote bikeReturn){
+		if (bikeReturn.getBookingStatus() == BookingStatus.RETURNED) return false;
 		if (bikeReturn.isReturnedToPartner()){
-			returnBikeToPartner(bikeReturn);
+			return returnBikeToPartner(bikeReturn);
 		}
-		else returnBikes(bikeReturn);
+		else return returnBikes(bikeReturn);
 	}
 
 	/**
 	 * This schedules the delivery of a BookedQuote to return to a partner and then calls the returnBikes
 	 * method in the partner provider
 	 * @param bikeReturn the BookedQuote to return (this contains information about who to return to)
+	 * @return false if the booking had already been returned
 	 */
-	private void returnBikeToPartner(BookedQuote bikeReturn){
+	private boolean returnBikeToPartner(BookedQuote bikeReturn){
 		BikeProvider partner = bikeReturn.getProvider();
 
-		for (Bike b: bikeReturn.getBikes()) {
-			deliveryService.scheduleDelivery(b, location, partner.getLocation(), LocalDate.now());
-		}
-		partner.returnBikes(bikeReturn);
+		deliveryService.scheduleDeliveries(bikeReturn.getBikes(), location, partner.getLocation(), LocalDate.now());
+		return partner.returnBikes(bikeReturn);
 	}
 }
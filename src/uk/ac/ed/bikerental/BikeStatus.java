@@ -0,0 +1,68 @@
+package uk.ac.ed.bikerental;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+
+/**
+ * The states a Bike can be in, along with the states it can move to from each one.
+ * A bike can always be set to the state it's already in.
+ */
+public enum BikeStatus {
+    AVAILABLE("Available"),
+    OUT_FOR_DELIVERY("Out for Delivery"),
+    DELIVERED("Delivered"),
+    RENTED("Rented");
+
+    private static final HashMap<String, BikeStatus> byLabel = new HashMap<String, BikeStatus>();
+
+    static {
+        AVAILABLE.next = EnumSet.of(AVAILABLE, OUT_FOR_DELIVERY, RENTED);
+        // Bikes out for delivery can be returned to the shop if the delivery is cancelled
+        OUT_FOR_DELIVERY.next = EnumSet.of(OUT_FOR_DELIVERY, DELIVERED, AVAILABLE);
+        // Delivered bikes are with the customer, and are picked up again when they're returned to a partner
+        DELIVERED.next = EnumSet.of(DELIVERED, RENTED, AVAILABLE, OUT_FOR_DELIVERY);
+        RENTED.next = EnumSet.of(RENTED, AVAILABLE, OUT_FOR_DELIVERY);
+
+        for (BikeStatus s : values()) {
+            byLabel.put(s.label, s);
+        }
+    }
+
+    private final String label;
+    private EnumSet<BikeStatus> next;
+
+    BikeStatus(String label) {
+        this.label = label;
+    }
+
+    /**
+     * @return the name of the status shown to people, eg "Out for Delivery"
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * @param status another status
+     * @return true if a bike in this status can be moved to the other status
+     */
+    public boolean canMoveTo(BikeStatus status) {
+        return next.contains(status);
+    }
+
+    /**
+     * @param label the name of a status, as returned by getLabel
+     * @return the status with that name
+     * @throws IllegalArgumentException if there's no status with that name
+     */
+    public static BikeStatus fromLabel(String label) {
+        BikeStatus status = byLabel.get(label);
+        if (status == null) throw new IllegalArgumentException("Unknown bike status " + label);
+        return status;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
@@ -3,14 +3,21 @@ package uk.ac.ed.bikerental;
 import java.math.BigDecimal;
 import java.util.Objects;
 
+/**
+ * A type of bike, identified by its name. Types with the same name are equal wherever they were made,
+ * and share a dense ID given out by the BikeTypeRegistry. Each instance keeps its own replacement value,
+ * so anything that depends on the value as well as the type (such as a cached valuation) has to include it
+ */
 public class BikeType {
 
     private BigDecimal replacementValue;
     private String name;
+    private int id;
 
     public BikeType(String name, BigDecimal replacementValue){
-        this.name = name;
+        this.name = Objects.requireNonNull(name);
         this.replacementValue = replacementValue;
+        this.id = BikeTypeRegistry.getGlobal().idOf(name);
     }
 
     public BigDecimal getReplacementValue() {
@@ -25,7 +32,39 @@ public class BikeType {
         return name;
     }
 
+    /**
+     * Renames the type, which gives it the ID of the new name
+     * @param name the new name
+     * @deprecated this changes which types the type is equal to and its hash code, so a renamed type is lost
+     * from any map or table it is already a key in, such as a provider's stock or a pricing policy.
+     * Make a new BikeType with the new name instead
+     */
+    @Deprecated
     public void setName(String name) {
-        this.name = name;
+        this.name = Objects.requireNonNull(name);
+        this.id = BikeTypeRegistry.getGlobal().idOf(name);
     }
-}
\ No newline at end of file
+
+    /**
+     * @return the ID shared by every type with this name, the IDs start from 0 with no gaps
+     */
+    public int getId() {
+        return id;
+    }
+
+    // Types are equal if they have the same name, so the ID can be compared instead
+
+    @Override
+    public int hashCode() {
+        return id;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof BikeType))
+            return false;
+        return id == ((BikeType) obj).id;
+    }
+}
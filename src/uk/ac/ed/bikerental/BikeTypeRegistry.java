@@ -0,0 +1,117 @@
+package uk.ac.ed.bikerental;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gives every BikeType name a dense integer ID, starting from 0 in the order the names are first seen.
+ * Every BikeType with the same name gets the same ID and they are all equal, so types loaded from different
+ * sources can be used interchangeably. The first type interned with a name is its canonical instance.
+ * The IDs let stock and price tables be arrays indexed by type instead of hash maps.
+ */
+public class BikeTypeRegistry {
+
+	private static final BikeTypeRegistry global = new BikeTypeRegistry();
+
+	private final ConcurrentHashMap<String, Integer> ids;
+
+	/** The canonical type of each ID, copied whenever it changes so it can be read without locking */
+	private volatile BikeType[] canonical;
+
+
+	public BikeTypeRegistry(){
+		this.ids = new ConcurrentHashMap<String, Integer>();
+		this.canonical = new BikeType[0];
+	}
+
+	/**
+	 * @return the registry every BikeType is given its ID by
+	 */
+	public static BikeTypeRegistry getGlobal(){
+		return global;
+	}
+
+	/**
+	 * @param name the name of a BikeType
+	 * @return the ID of the name, given out now if the name hasn't been seen before
+	 */
+	int idOf(String name){
+		Integer id = ids.get(name);
+		if (id != null) return id;
+		synchronized (this) {
+			id = ids.get(name);
+			if (id == null) {
+				id = ids.size();
+				ids.put(name, id);
+			}
+			return id;
+		}
+	}
+
+	/**
+	 * Finds the canonical type with the same name as a type, making the type the canonical one if the name
+	 * doesn't have one yet (or its canonical type has since been renamed)
+	 * @param type a BikeType
+	 * @return the canonical type with the same name
+	 */
+	public BikeType intern(BikeType type){
+		int id = type.getId();
+		BikeType c = lookup(canonical, type);
+		if (c != null && c.getId() == id) return c;
+		synchronized (this) {
+			c = lookup(canonical, type);
+			if (c != null && c.getId() == id) return c;
+			canonical = withEntry(canonical, id, type);
+			return type;
+		}
+	}
+
+	/**
+	 * @param name the name of a BikeType
+	 * @return the canonical type with the name, or null if there isn't one
+	 */
+	public BikeType get(String name){
+		Integer id = ids.get(name);
+		return id == null ? null : get(id);
+	}
+
+	/**
+	 * @param id the ID of a BikeType
+	 * @return the canonical type with the ID, or null if there isn't one
+	 */
+	public BikeType get(int id){
+		BikeType[] c = canonical;
+		return id >= 0 && id < c.length ? c[id] : null;
+	}
+
+	/**
+	 * @return the number of IDs given out, every ID is below this
+	 */
+	public int size(){
+		return ids.size();
+	}
+
+	/**
+	 * Copies a table indexed by BikeType ID with one entry set, growing it if needed.
+	 * Tables are copied rather than changed in place so they can be read without locking
+	 * @param table the current table
+	 * @param id the ID of the entry to set
+	 * @param value the new value
+	 * @return the new table
+	 */
+	static <T> T[] withEntry(T[] table, int id, T value){
+		T[] copy = Arrays.copyOf(table, Math.max(table.length, id + 1));
+		copy[id] = value;
+		return copy;
+	}
+
+	/**
+	 * @param table a table indexed by BikeType ID
+	 * @param type the type to look up
+	 * @return the type's entry, or null if it doesn't have one
+	 */
+	static <T> T lookup(T[] table, BikeType type){
+		int id = type.getId();
+		return id < table.length ? table[id] : null;
+	}
+}
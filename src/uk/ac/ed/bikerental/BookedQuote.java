@@ -1,7 +1,6 @@
 package uk.ac.ed.bikerental;
 import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 
 /**
@@ -16,12 +15,11 @@ public class BookedQuote{
 	private boolean returnedToPartner;
 	private BikeProvider partnerToReturnTo;
 	private Customer customer;
-	private String status;
+	private volatile BookingStatus status = BookingStatus.PENDING_PAYMENT;
 	private String bookingID;
 
-	private final ArrayList<String> possibleStatuses = new ArrayList<String>(Arrays.asList("Returned", "Pending Payment", "Pending Collection", "Pending Delivery"));
-
-	private static long idCounter = 0;
+	/** Gives out the IDs of all bookings */
+	private static volatile BookingIdGenerator idGenerator = new SequentialIdGenerator();
 
 	public BookedQuote() {
 		generateBookingID();
@@ -60,12 +58,35 @@ public class BookedQuote{
 		return customer;
 	}
 
+	/**
+	 * @return the name of the booking's status, eg "Pending Delivery"
+	 */
 	public String getStatus() {
+		return status.getLabel();
+	}
+
+	public BookingStatus getBookingStatus() {
 		return status;
 	}
 
+	/**
+	 * @param status the name of the new status, eg "Returned"
+	 * @throws IllegalArgumentException if there's no status with that name
+	 * @throws IllegalStateException if the booking can't move to the new status from its current one
+	 */
 	public void setStatus(String status) {
-		assert possibleStatuses.contains(status);
+		setBookingStatus(BookingStatus.fromLabel(status));
+	}
+
+	/**
+	 * Moves the booking to a new status, new bookings start off pending payment
+	 * @param status the new status
+	 * @throws IllegalStateException if the booking can't move to the new status from its current one
+	 */
+	public synchronized void setBookingStatus(BookingStatus status) {
+		if (!this.status.canMoveTo(status)) {
+			throw new IllegalStateException("Booking can't go from " + this.status + " to " + status);
+		}
 		this.status = status;
 	}
 
@@ -74,27 +95,158 @@ public class BookedQuote{
 	}
 
 	public void generateBookingID(){
-		this.bookingID = String.valueOf(idCounter++);
+		this.bookingID = idGenerator.nextId();
+	}
+
+	public static BookingIdGenerator getIdGenerator() {
+		return idGenerator;
+	}
+
+	/**
+	 * Changes how the IDs of new bookings are made, eg to a TimeOrderedIdGenerator when there are several
+	 * booking nodes or bookings need to stay unique across restarts
+	 * @param generator the generator to use for new bookings
+	 */
+	public static void setIdGenerator(BookingIdGenerator generator) {
+		idGenerator = generator;
 	}
 
 
 	/**
 	 * The constructor takes in the selected Quote and copies the data across from it
 	 * resolveCollectionOrDelivery is also called to fill out some of the other attributes
+	 * The locks of all the bikes are taken and the bikes are checked to still be free before any of them
+	 * are booked, so two customers booking quotes with the same bikes can't both succeed
 	 * @param parentQuote the selected Quote to book
 	 * @param customer the customer doing the booking
+	 * @throws IllegalStateException if any of the bikes have been booked since the quote was generated
 	 */
 	public BookedQuote(Quote parentQuote, Customer customer) {
+		this(parentQuote, customer, true);
+
+		ArrayList<BookingLock> locks = BookingLock.lockAll(BookingLock.locksFor(bikes));
+		try {
+			reserve();
+		}
+		finally {
+			BookingLock.unlockAll(locks);
+		}
+		generateBookingID();
+	}
+
+	/**
+	 * Copies the data across from the quote without booking any of the bikes
+	 */
+	private BookedQuote(Quote parentQuote, Customer customer, boolean copyOnly) {
 		this.provider = parentQuote.getProvider();
 		this.bikes = parentQuote.getBikes();
 		this.deposit = parentQuote.getDeposit();
 		this.price = parentQuote.getPrice();
 		this.dates = parentQuote.getDates();
 		this.customer = customer;
+	}
+
+	/**
+	 * Recreates a booking that was saved, without booking any of the bikes
+	 * @param bookingID the ID of the booking
+	 * @param quote the details of the booking
+	 * @param customer the customer who made the booking
+	 * @param status the status the booking was saved with
+	 * @param partner the partner the bikes are to be returned to, or null
+	 * @return the restored booking
+	 */
+	static BookedQuote restore(String bookingID, Quote quote, Customer customer, BookingStatus status, BikeProvider partner) {
+		BookedQuote bq = new BookedQuote(quote, customer, true);
+		bq.bookingID = bookingID;
+		bq.status = status;
+		if (partner != null) {
+			bq.partnerToReturnTo = partner;
+			bq.returnedToPartner = true;
+			partner.getBookings().restore(bq);
+		}
+		return bq;
+	}
+
+	/**
+	 * Books several quotes together, either all of them are booked or none of them are.
+	 * The locks of the bikes in every quote are taken at once, then each quote is checked and booked in turn
+	 * If any quote can't be booked (including because an earlier quote in the batch has the same bikes for
+	 * overlapping dates) the quotes already booked are released again
+	 * @param quotes the quotes to book
+	 * @param customer the customer doing the booking
+	 * @return a BookedQuote for each quote, in the same order
+	 * @throws IllegalStateException if any of the quotes is no longer available
+	 */
+	static ArrayList<BookedQuote> bookAll(Collection<Quote> quotes, Customer customer) {
+		ArrayList<BookedQuote> booked = new ArrayList<BookedQuote>(quotes.size());
+		ArrayList<Bike> allBikes = new ArrayList<Bike>();
+		for (Quote q: quotes){
+			booked.add(new BookedQuote(q, customer, true));
+			allBikes.addAll(q.getBikes());
+		}
+
+		ArrayList<BookingLock> locks = BookingLock.lockAll(BookingLock.locksFor(allBikes));
+		try {
+			for (int i=0; i<booked.size(); i++){
+				try {
+					booked.get(i).reserve();
+				}
+				catch (IllegalStateException e) {
+					release(booked.subList(0, i));
+					throw e;
+				}
+			}
+		}
+		finally {
+			BookingLock.unlockAll(locks);
+		}
+
+		for (BookedQuote bq: booked){
+			bq.generateBookingID();
+		}
+		return booked;
+	}
+
+	/**
+	 * Frees the dates of bookings that are being abandoned, such as when a batch can't be paid for
+	 * @param bookings the bookings to release
+	 */
+	static void releaseAll(Collection<BookedQuote> bookings) {
+		ArrayList<Bike> allBikes = new ArrayList<Bike>();
+		for (BookedQuote bq: bookings){
+			allBikes.addAll(bq.getBikes());
+		}
+		ArrayList<BookingLock> locks = BookingLock.lockAll(BookingLock.locksFor(allBikes));
+		try {
+			release(bookings);
+		}
+		finally {
+			BookingLock.unlockAll(locks);
+		}
+	}
+
+	/**
+	 * Checks the bikes are all still free and books them, the write locks of the bikes must be held
+	 * @throws IllegalStateException if any of the bikes have been booked since the quote was generated
+	 */
+	private void reserve() {
+		for (Bike b: bikes){
+			if (!b.checkFree(dates)) throw new IllegalStateException("Quote is no longer available");
+		}
 		for (Bike b: bikes){
 			b.addToDates(dates);
 		}
-		generateBookingID();
+	}
+
+	/**
+	 * Removes the dates of the bookings from their bikes, the write locks of the bikes must be held
+	 */
+	private static void release(Collection<BookedQuote> bookings) {
+		for (BookedQuote bq: bookings){
+			for (Bike b: bq.getBikes()){
+				b.removeFromDates(bq.getDates());
+			}
+		}
 	}
 
 
@@ -107,6 +259,8 @@ public class BookedQuote{
 		if (provider.getPartners().contains(partner)){
 			partnerToReturnTo = partner;
 			returnedToPartner = true;
+			// The partner needs to be able to find the booking when the bikes are brought back to it
+			partner.getBookings().register(this);
 		}
 	}
 
@@ -0,0 +1,13 @@
+package uk.ac.ed.bikerental;
+
+/**
+ * Hands out the IDs of new bookings. Implementations must be safe to call from many threads at once and
+ * never give out the same ID twice.
+ */
+public interface BookingIdGenerator {
+
+	/**
+	 * @return a booking ID that hasn't been given out before
+	 */
+	public String nextId();
+}
@@ -0,0 +1,99 @@
+package uk.ac.ed.bikerental;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The lock guarding the booked dates of a stripe of bikes, normally all the bikes of one BikeType at a provider.
+ * Reading availability takes the read lock and changing bookings takes the write lock, so bookings
+ * of different types or at different providers never wait for each other.
+ * Every lock has a fixed position in a global order, and several locks must always be taken in this order
+ * (using lockAll) so that two bookings can't deadlock.
+ */
+public class BookingLock {
+
+    private static final AtomicLong nextOrder = new AtomicLong();
+
+    private static final Comparator<BookingLock> ORDER = Comparator.comparingLong(l -> l.order);
+
+    private final ReentrantReadWriteLock lock;
+    private final long order;
+
+    /** Locks of bikes that aren't stocked come after every other lock in the order */
+    private static final long UNSTOCKED_ORDER = 1L << 62;
+
+    public BookingLock(){
+        this(nextOrder.getAndIncrement());
+    }
+
+    private BookingLock(long order){
+        this.lock = new ReentrantReadWriteLock();
+        this.order = order;
+    }
+
+    /**
+     * Makes the lock for a bike that isn't stocked by a provider. Stocking the bike takes this lock while
+     * already holding its calendar's lock, so these locks are last in the order and a thread holding one
+     * never waits for a calendar's lock
+     */
+    static BookingLock forUnstockedBike(){
+        return new BookingLock(UNSTOCKED_ORDER + nextOrder.getAndIncrement());
+    }
+
+    public ReentrantReadWriteLock.ReadLock readLock(){
+        return lock.readLock();
+    }
+
+    public ReentrantReadWriteLock.WriteLock writeLock(){
+        return lock.writeLock();
+    }
+
+    /**
+     * @return true if the current thread holds the read lock
+     */
+    boolean isReadLockedByCurrentThread(){
+        return lock.getReadHoldCount() > 0;
+    }
+
+    /**
+     * Takes the write lock of every lock in the collection in the global order, ignoring duplicates
+     * @param locks the locks to take
+     * @return the locks that were taken in order, to be passed to unlockAll
+     */
+    public static ArrayList<BookingLock> lockAll(Collection<BookingLock> locks){
+        ArrayList<BookingLock> sorted = new ArrayList<BookingLock>(locks);
+        sorted.sort(ORDER);
+        ArrayList<BookingLock> taken = new ArrayList<BookingLock>(sorted.size());
+        for (BookingLock l : sorted) {
+            if (!taken.isEmpty() && taken.get(taken.size() - 1) == l) continue;
+            l.writeLock().lock();
+            taken.add(l);
+        }
+        return taken;
+    }
+
+    /**
+     * Releases the write locks taken by lockAll in reverse order
+     * @param taken the list returned by lockAll
+     */
+    public static void unlockAll(ArrayList<BookingLock> taken){
+        for (int i=taken.size() - 1; i>=0; i--){
+            taken.get(i).writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param bikes some bikes
+     * @return the locks guarding the bookings of the bikes
+     */
+    public static ArrayList<BookingLock> locksFor(Collection<Bike> bikes){
+        ArrayList<BookingLock> locks = new ArrayList<BookingLock>();
+        for (Bike b : bikes) {
+            locks.add(b.getLock());
+        }
+        return locks;
+    }
+}
@@ -0,0 +1,78 @@
+package uk.ac.ed.bikerental;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stores BookedQuotes indexed by their booking ID, so a booking can be found straight from its ID.
+ * Every provider has a registry of the bookings that can be returned to it (its own bookings and those
+ * its partners have been chosen to take back) and there is one global registry of every booking.
+ * Bookings are removed once they have been returned, so the registries only hold outstanding bookings.
+ */
+public class BookingRegistry {
+
+	private static final BookingRegistry global = new BookingRegistry();
+
+	private ConcurrentHashMap<String, BookedQuote> bookings;
+
+
+	public BookingRegistry(){
+		this.bookings = new ConcurrentHashMap<String, BookedQuote>();
+	}
+
+	/**
+	 * @return the registry of every booking made with any provider
+	 */
+	public static BookingRegistry getGlobal(){
+		return global;
+	}
+
+	/**
+	 * Adds a booking to the registry, registering the same booking again does nothing
+	 * @param booking the booking to add
+	 * @throws IllegalStateException if a different booking with the same ID is already registered
+	 */
+	public void register(BookedQuote booking){
+		BookedQuote existing = bookings.putIfAbsent(booking.getBookingID(), booking);
+		if (existing != null && existing != booking) {
+			throw new IllegalStateException("A booking with the ID " + booking.getBookingID() + " is already registered");
+		}
+	}
+
+	/**
+	 * Adds a booking restored from a journal, replacing any booking with the same ID since that can only
+	 * be the copy of the same booking from before it was restored
+	 * @param booking the restored booking
+	 */
+	void restore(BookedQuote booking){
+		bookings.put(booking.getBookingID(), booking);
+	}
+
+	/**
+	 * Removes a booking from the registry if it is present
+	 * @param booking the booking to remove
+	 */
+	public void remove(BookedQuote booking){
+		bookings.remove(booking.getBookingID(), booking);
+	}
+
+	/**
+	 * @param bookingID the ID of a booking
+	 * @return the booking with the ID, or null if there isn't one in the registry
+	 */
+	public BookedQuote get(String bookingID){
+		return bookings.get(bookingID);
+	}
+
+	/**
+	 * @return every outstanding booking in the registry
+	 */
+	public Collection<BookedQuote> getBookings(){
+		return Collections.unmodifiableCollection(bookings.values());
+	}
+
+	public int size(){
+		return bookings.size();
+	}
+}
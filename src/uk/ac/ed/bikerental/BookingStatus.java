@@ -0,0 +1,67 @@
+package uk.ac.ed.bikerental;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+
+/**
+ * The states a BookedQuote can be in, along with the states it can move to from each one.
+ * A booking can always be set to the state it's already in.
+ */
+public enum BookingStatus {
+	PENDING_PAYMENT("Pending Payment"),
+	PENDING_COLLECTION("Pending Collection"),
+	PENDING_DELIVERY("Pending Delivery"),
+	RETURNED("Returned");
+
+	private static final HashMap<String, BookingStatus> byLabel = new HashMap<String, BookingStatus>();
+
+	static {
+		// A booking that is never paid for can be returned straight away to release its bikes
+		PENDING_PAYMENT.next = EnumSet.of(PENDING_PAYMENT, PENDING_COLLECTION, PENDING_DELIVERY, RETURNED);
+		PENDING_COLLECTION.next = EnumSet.of(PENDING_COLLECTION, RETURNED);
+		PENDING_DELIVERY.next = EnumSet.of(PENDING_DELIVERY, RETURNED);
+		RETURNED.next = EnumSet.of(RETURNED);
+
+		for (BookingStatus s : values()) {
+			byLabel.put(s.label, s);
+		}
+	}
+
+	private final String label;
+	private EnumSet<BookingStatus> next;
+
+	BookingStatus(String label) {
+		this.label = label;
+	}
+
+	/**
+	 * @return the name of the status shown to people, eg "Pending Delivery"
+	 */
+	public String getLabel() {
+		return label;
+	}
+
+	/**
+	 * @param status another status
+	 * @return true if a booking in this status can be moved to the other status
+	 */
+	public boolean canMoveTo(BookingStatus status) {
+		return next.contains(status);
+	}
+
+	/**
+	 * @param label the name of a status, as returned by getLabel
+	 * @return the status with that name
+	 * @throws IllegalArgumentException if there's no status with that name
+	 */
+	public static BookingStatus fromLabel(String label) {
+		BookingStatus status = byLabel.get(label);
+		if (status == null) throw new IllegalArgumentException("Unknown booking status " + label);
+		return status;
+	}
+
+	@Override
+	public String toString() {
+		return label;
+	}
+}
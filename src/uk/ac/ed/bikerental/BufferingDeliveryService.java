@@ -0,0 +1,137 @@
+package uk.ac.ed.bikerental;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A DeliveryService that holds on to deliveries and passes them on to another DeliveryService in batches.
+ * Deliveries with the same pickup, dropoff and date are grouped together so they reach the real service
+ * as a single scheduleDeliveries call.
+ * The buffer is flushed once it holds maxBuffered deliverables, or on the first call after the window has
+ * passed since the oldest buffered delivery. flush (or close) should be called when no more deliveries are
+ * expected so nothing is left in the buffer.
+ */
+public class BufferingDeliveryService implements DeliveryService, AutoCloseable {
+
+    private final DeliveryService deliveryService;
+    private final int maxBuffered;
+    private final long windowNanos;
+
+    /** The buffered deliverables grouped by route, in the order each route was first seen */
+    private LinkedHashMap<Route, ArrayList<Deliverable>> buffered;
+    private int bufferedCount;
+    private long windowStart;
+
+
+    /**
+     * @param deliveryService the service to pass the batches on to
+     * @param maxBuffered the most deliverables to hold before flushing
+     * @param windowMillis how long in milliseconds deliveries can be held before flushing
+     */
+    public BufferingDeliveryService(DeliveryService deliveryService, int maxBuffered, long windowMillis) {
+        assert maxBuffered > 0;
+        this.deliveryService = deliveryService;
+        this.maxBuffered = maxBuffered;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.buffered = new LinkedHashMap<Route, ArrayList<Deliverable>>();
+    }
+
+    public DeliveryService getDeliveryService() {
+        return deliveryService;
+    }
+
+    @Override
+    public synchronized void scheduleDelivery(
+            Deliverable deliverable,
+            Location pickupLocation,
+            Location dropoffLocation,
+            LocalDate pickupDate) {
+        bufferFor(pickupLocation, dropoffLocation, pickupDate).add(deliverable);
+        bufferedCount++;
+        flushIfDue();
+    }
+
+    @Override
+    public synchronized void scheduleDeliveries(
+            Collection<? extends Deliverable> deliverables,
+            Location pickupLocation,
+            Location dropoffLocation,
+            LocalDate pickupDate) {
+        bufferFor(pickupLocation, dropoffLocation, pickupDate).addAll(deliverables);
+        bufferedCount += deliverables.size();
+        flushIfDue();
+    }
+
+    /**
+     * Passes every buffered delivery on to the real service, one call per route
+     */
+    public synchronized void flush() {
+        if (bufferedCount == 0) return;
+        LinkedHashMap<Route, ArrayList<Deliverable>> batch = buffered;
+        buffered = new LinkedHashMap<Route, ArrayList<Deliverable>>();
+        bufferedCount = 0;
+        for (Map.Entry<Route, ArrayList<Deliverable>> e : batch.entrySet()) {
+            Route r = e.getKey();
+            deliveryService.scheduleDeliveries(e.getValue(), r.pickupLocation, r.dropoffLocation, r.pickupDate);
+        }
+    }
+
+    /**
+     * @return the number of deliverables waiting to be passed on
+     */
+    public synchronized int getBufferedCount() {
+        return bufferedCount;
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+    private ArrayList<Deliverable> bufferFor(Location pickupLocation, Location dropoffLocation, LocalDate pickupDate) {
+        if (bufferedCount == 0) windowStart = System.nanoTime();
+        return buffered.computeIfAbsent(new Route(pickupLocation, dropoffLocation, pickupDate),
+                r -> new ArrayList<Deliverable>());
+    }
+
+    private void flushIfDue() {
+        if (bufferedCount >= maxBuffered || System.nanoTime() - windowStart >= windowNanos) flush();
+    }
+
+    /**
+     * The pickup, dropoff and date shared by a batch of deliveries
+     */
+    private static class Route {
+        private final Location pickupLocation;
+        private final Location dropoffLocation;
+        private final LocalDate pickupDate;
+
+        private Route(Location pickupLocation, Location dropoffLocation, LocalDate pickupDate) {
+            this.pickupLocation = pickupLocation;
+            this.dropoffLocation = dropoffLocation;
+            this.pickupDate = pickupDate;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(pickupLocation, dropoffLocation, pickupDate);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Route))
+                return false;
+            Route other = (Route) obj;
+            return Objects.equals(pickupLocation, other.pickupLocation)
+                    && Objects.equals(dropoffLocation, other.dropoffLocation)
+                    && Objects.equals(pickupDate, other.pickupDate);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package uk.ac.ed.bikerental;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A ValuationPolicy that remembers the values worked out by another policy, so repeated quotes for the same
+ * bikes don't value them again.
+ * Values are kept for one day at a time: when a bike is valued for a later date than the cached day the cache
+ * rolls over to that day and starts again. Valuations for earlier dates are passed straight through.
+ * Values can be cached per Bike, or per BikeType and replacement value when the wrapped policy only depends on
+ * the type and date. Types with the same name are equal even if their replacement values differ, so the value
+ * is part of the key. If the wrapped policy's settings change the cache should be invalidated.
+ */
+public class CachingValuationPolicy implements ValuationPolicy {
+
+    private final ValuationPolicy policy;
+    private final boolean valuedByType;
+
+    /** The values for the day currently being cached, replaced as a whole at rollover */
+    private volatile DayBucket bucket;
+
+
+    /**
+     * Constructor for a cache of the value of each bike
+     * @param policy the policy whose values are cached
+     */
+    public CachingValuationPolicy(ValuationPolicy policy){
+        this(policy, false);
+    }
+
+    /**
+     * @param policy the policy whose values are cached
+     * @param valuedByType true if the policy gives every bike of the same BikeType the same value on a day,
+     *                     so the values can be shared between bikes of the type
+     */
+    public CachingValuationPolicy(ValuationPolicy policy, boolean valuedByType){
+        this.policy = policy;
+        this.valuedByType = valuedByType;
+        this.bucket = new DayBucket(Long.MIN_VALUE);
+    }
+
+    public ValuationPolicy getPolicy() {
+        return policy;
+    }
+
+    @Override
+    public BigDecimal calculateValue(Bike bike, LocalDate date) {
+        long day = date.toEpochDay();
+        DayBucket current = bucket;
+        if (day != current.day){
+            if (day < current.day) return policy.calculateValue(bike, date);
+            current = rollOver(day);
+            if (day != current.day) return policy.calculateValue(bike, date);
+        }
+        Object key = valuedByType ? new TypeKey(bike.getType()) : bike;
+        BigDecimal value = current.values.get(key);
+        if (value == null){
+            value = policy.calculateValue(bike, date);
+            current.values.putIfAbsent(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Forgets every cached value, used when replacement values or the wrapped policy's settings change
+     */
+    public void invalidateAll(){
+        synchronized (this){
+            bucket = new DayBucket(bucket.day);
+        }
+    }
+
+    /**
+     * @return the number of values cached for the current day
+     */
+    public int size(){
+        return bucket.values.size();
+    }
+
+    /**
+     * Moves the cache on to a later day, if another thread hasn't already moved it further
+     */
+    private synchronized DayBucket rollOver(long day){
+        if (bucket.day < day) bucket = new DayBucket(day);
+        return bucket;
+    }
+
+    /**
+     * A BikeType's ID and replacement value, which is what a policy valuing by type depends on
+     */
+    private static final class TypeKey {
+        private final int typeId;
+        private final BigDecimal replacementValue;
+
+        private TypeKey(BikeType type){
+            this.typeId = type.getId();
+            this.replacementValue = type.getReplacementValue();
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * typeId + Objects.hashCode(replacementValue);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof TypeKey))
+                return false;
+            TypeKey other = (TypeKey) obj;
+            return typeId == other.typeId && Objects.equals(replacementValue, other.replacementValue);
+        }
+    }
+
+    /**
+     * The cached values for a single day, keyed by Bike or TypeKey
+     */
+    private static class DayBucket {
+        private final long day;
+        private final ConcurrentHashMap<Object, BigDecimal> values = new ConcurrentHashMap<Object, BigDecimal>();
+
+        private DayBucket(long day){
+            this.day = day;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package uk.ac.ed.bikerental;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Scanner;
 
@@ -58,7 +59,7 @@ public class Customer {
 	/**
 	 * 	 Creates a new Search object with required parameters
 	 * 	 This is then used to return a collection of quotes from different providers
-	 * 	 If none are returned alternate dates are found and the method is called recursively with these dates
+	 * 	 If none are returned searchAlternativeDates can be used to find dates to search again with
 	 * @param location the location to look for quotes near
 	 * @param bikes a map of bike types to quantities to get quotes for
 	 * @param dates the dates to get quotes for
@@ -72,6 +73,37 @@ public class Customer {
 
 	}
 
+	/**
+	 * Searches for quotes in the same way as above, but only the providers near the location in the
+	 * registry are asked for quotes
+	 * @param location the location to look for quotes near
+	 * @param bikes a map of bike types to quantities to get quotes for
+	 * @param dates the dates to get quotes for
+	 * @param registry the registry of all providers
+	 * @return a collection of relevant Quotes
+	 */
+	public ArrayList<Quote> searchQuotes(Location location, Map<BikeType, Integer> bikes, DateRange dates, ProviderRegistry registry){
+		Search search = new Search(location, dates, bikes, registry);
+		return (ArrayList<Quote>) search.getQuotes();
+	}
+
+	/**
+	 * Finds the dates closest to the ones wanted that each nearby provider could rent out the bikes for
+	 * the same length of time, to search again with when searchQuotes finds nothing
+	 * @param location the location to look for providers near
+	 * @param bikes a map of bike types to quantities wanted
+	 * @param dates the dates wanted
+	 * @param providers the providers to look at (should generally be all providers)
+	 * @param maxWindows the most alternatives to find at each provider
+	 * @param searchDays how many days either side of the wanted start to look
+	 * @return the alternative dates of each nearby provider that has any
+	 */
+	public Map<BikeProvider, ArrayList<DateRange>> searchAlternativeDates(Location location, Map<BikeType, Integer> bikes,
+			DateRange dates, ArrayList<BikeProvider> providers, int maxWindows, int searchDays){
+		Search search = new Search(location, dates, bikes, providers);
+		return search.getAlternativeDates(maxWindows, searchDays);
+	}
+
 	/**
 	 * Prints the inputted quotes nicely
 	 * @param quotes the quotes to display
@@ -91,18 +123,19 @@ public class Customer {
 	 * @param partner
 	 * @param isCollected
 	 * @return the BookedQuote generated
+	 * @throws IllegalStateException if the quote has been booked by someone else since it was generated
 	 */
 	public void makeBooking(Quote selectedQuote, BikeProvider partner, Boolean isCollected) {
 		BookedQuote bq = new BookedQuote(selectedQuote, this);
-		bq.setStatus("Pending Payment");
+		bq.setBookingStatus(BookingStatus.PENDING_PAYMENT);
 
 		if (new PaymentMethod().authorisePayment()) {
 			if (! isCollected){
-				bq.setStatus("Pending Delivery");
+				bq.setBookingStatus(BookingStatus.PENDING_DELIVERY);
 				bq.getProvider().scheduleDeliveryToCustomer(bq);
 
 			}
-			else bq.setStatus("Pending Collection");
+			else bq.setBookingStatus(BookingStatus.PENDING_COLLECTION);
 		}
 		else return;
 		if (partner != null){
@@ -110,7 +143,53 @@ public class Customer {
 		}
 
 		bookings.add(bq);
+		bq.getProvider().recordBooking(bq);
+
+	}
+
+	/**
+	 * Books several quotes at once, for customers like companies and events who need a lot of bikes
+	 * 	Availability is checked for every quote before any of them are booked and the payment is authorised
+	 * 	once for the whole batch. Either every quote is booked or none of them are
+	 * 	The deliveries for each provider are then scheduled together
+	 * @param selectedQuotes the quotes to book
+	 * @param partner the partner to return the bikes to, or null to return them to the original provider
+	 * @param isCollected true if the customer will collect the bikes, false for them to be delivered
+	 * @return the BookedQuotes generated, or an empty list if the payment wasn't authorised
+	 * @throws IllegalStateException if any of the quotes has been booked by someone else since it was generated
+	 */
+	public ArrayList<BookedQuote> makeBookings(Collection<Quote> selectedQuotes, BikeProvider partner, Boolean isCollected) {
+		ArrayList<BookedQuote> batch = BookedQuote.bookAll(selectedQuotes, this);
+		for (BookedQuote bq: batch){
+			bq.setBookingStatus(BookingStatus.PENDING_PAYMENT);
+		}
+
+		if (!new PaymentMethod().authorisePayment()) {
+			BookedQuote.releaseAll(batch);
+			return new ArrayList<BookedQuote>();
+		}
 
+		// The bookings to be delivered are grouped by provider so each provider schedules them in one go
+		LinkedHashMap<BikeProvider, ArrayList<BookedQuote>> deliveries = new LinkedHashMap<BikeProvider, ArrayList<BookedQuote>>();
+		for (BookedQuote bq: batch){
+			if (! isCollected){
+				bq.setBookingStatus(BookingStatus.PENDING_DELIVERY);
+				deliveries.computeIfAbsent(bq.getProvider(), p -> new ArrayList<BookedQuote>()).add(bq);
+			}
+			else bq.setBookingStatus(BookingStatus.PENDING_COLLECTION);
+			if (partner != null){
+				bq.setPartnerToReturnTo(partner);
+			}
+		}
+		for (Map.Entry<BikeProvider, ArrayList<BookedQuote>> e: deliveries.entrySet()){
+			e.getKey().scheduleDeliveriesToCustomer(e.getValue());
+		}
+
+		bookings.addAll(batch);
+		for (BookedQuote bq: batch){
+			bq.getProvider().recordBooking(bq);
+		}
+		return batch;
 	}
 
 
@@ -1,34 +1,69 @@
 package uk.ac.ed.bikerental;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
-import java.util.Objects;
 
 
 /**
- * Used to store a range of dates that bikes will be rented for
+ * Used to store a range of dates that bikes will be rented for, including both the start and end dates.
+ * DateRanges are immutable. Alongside the LocalDates the start and end are kept as epoch days, and the
+ * length and hash are worked out once, since ranges are compared and priced in every search
  */
 public class DateRange {
-    private LocalDate start, end;
+    private final LocalDate start, end;
+
+    /** The start and end as days since 1970-01-01, so comparisons are integer comparisons */
+    private final int startDay, endDay;
+
+    private final long days;
+    private final int hash;
 
 
     /**
      * Constructor taking the start and end dates of the range
      * @param start the start of the range as a LocalDate
      * @param end the end of the range as a LocalDate
+     * @throws ArithmeticException if a date is millions of years away
      */
     public DateRange(LocalDate start, LocalDate end) {
         this.start = start;
         this.end = end;
+        this.startDay = Math.toIntExact(start.toEpochDay());
+        this.endDay = Math.toIntExact(end.toEpochDay());
+        this.days = (long) endDay - startDay;
+        this.hash = 31 * startDay + endDay;
     }
-    
+
+    /**
+     * @param startDay the first day of the range as an epoch day
+     * @param endDay the last day of the range as an epoch day
+     * @return the range between the days
+     */
+    public static DateRange ofEpochDays(long startDay, long endDay) {
+        return new DateRange(LocalDate.ofEpochDay(startDay), LocalDate.ofEpochDay(endDay));
+    }
+
     public LocalDate getStart() {
         return this.start;
     }
-    
+
     public LocalDate getEnd() {
         return this.end;
     }
 
+    /**
+     * @return the start of the range as an epoch day
+     */
+    public int getStartEpochDay() {
+        return startDay;
+    }
+
+    /**
+     * @return the end of the range as an epoch day
+     */
+    public int getEndEpochDay() {
+        return endDay;
+    }
+
     /**
      *
      * @return the length of the date range in years
@@ -42,14 +77,14 @@ public class DateRange {
      * @return the length of the date range in days
      */
     public long toDays() {
-        return ChronoUnit.DAYS.between(this.getStart(), this.getEnd());
+        return days;
     }
 
 
     @Override
     public int hashCode() {
         // hashCode method allowing use in collections
-        return Objects.hash(end, start);
+        return hash;
     }
 
     @Override
@@ -62,31 +97,21 @@ public class DateRange {
         if (getClass() != obj.getClass())
             return false;
         DateRange other = (DateRange) obj;
-        return Objects.equals(end, other.end) && Objects.equals(start, other.start);
+        return startDay == other.startDay && endDay == other.endDay;
     }
     
     // You can add your own methods here
 
     /**
      * Checks if a given DateRange and this DateRange object overlap with each other.
-     * This problem is broken down into 2 cases: does the others start lie in this range,
-     * or does this ranges start lie in the other.
-     * The LocalDate.compareTo method is used to determine whether a date comes before or after another
+     * Since both ends are included, they overlap unless one of them ends before the other starts
      *
      * @param other the other DateRange to compare with
      * @return a boolean representing if the dates overlap
      */
-    public Boolean overlaps(DateRange other) {
-        LocalDate otherStart = other.getStart();
-        LocalDate otherEnd = other.getEnd();
-        return ((start.compareTo(otherStart)>=0 && start.compareTo(otherEnd)<=0) ||
-                (otherStart.compareTo(start)>=0 && otherStart.compareTo(end)<=0));
+    public boolean overlaps(DateRange other) {
+        return startDay <= other.endDay && other.startDay <= endDay;
     }
 
 
 }
-
-
-
-
-
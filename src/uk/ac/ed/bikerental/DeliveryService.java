@@ -1,10 +1,28 @@
 package uk.ac.ed.bikerental;
 
 import java.time.LocalDate;
+import java.util.Collection;
 
 public interface DeliveryService {
     public void scheduleDelivery(Deliverable deliverable,
                                  Location pickupLocation,
                                  Location dropoffLocation,
                                  LocalDate pickupDate);
+
+    /**
+     * Schedules the delivery of several deliverables that share a pickup, dropoff and date.
+     * A real courier service can take these in one request, by default they are scheduled one at a time
+     * @param deliverables the things to deliver
+     * @param pickupLocation where they are picked up from
+     * @param dropoffLocation where they are dropped off
+     * @param pickupDate the day they are picked up
+     */
+    public default void scheduleDeliveries(Collection<? extends Deliverable> deliverables,
+                                           Location pickupLocation,
+                                           Location dropoffLocation,
+                                           LocalDate pickupDate) {
+        for (Deliverable d : deliverables) {
+            scheduleDelivery(d, pickupLocation, dropoffLocation, pickupDate);
+        }
+    }
 }
@@ -1,8 +1,11 @@
 package uk.ac.ed.bikerental;
 import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 /**
  * This is an implementation of the Discounted pricing submodule
@@ -12,22 +15,41 @@ public class DiscountedPricing implements PricingPolicy{
 	
 	/** Stores the daily rental price of each bike type */
 	private HashMap<BikeType, BigDecimal> dailyPrices;
+
+	/** The daily prices converted to pence indexed by BikeType ID, kept in step with dailyPrices */
+	private volatile Money.PenceAmount[] dailyPricesInPence;
 	
 	/** Stores the minimum days to qualify for a discount and the discount as a percentage */
 	private ArrayList<DurationDiscount> durationDiscounts;
 
+	/** The discounts compiled into a lookup table, rebuilt whenever a discount is added */
+	private volatile DiscountTable discountTable;
+
 
 	public DiscountedPricing(){
 		this.dailyPrices = new HashMap<BikeType, BigDecimal>();
+		this.dailyPricesInPence = new Money.PenceAmount[0];
 		this.durationDiscounts = new ArrayList<DurationDiscount>();
+		this.discountTable = new DiscountTable(durationDiscounts);
 	}
 
-	public HashMap<BikeType, BigDecimal> getDailyPrices() {
-		return dailyPrices;
+	/**
+	 * @return the daily price of each BikeType, these should be changed with setDailyRentalPrice
+	 */
+	public Map<BikeType, BigDecimal> getDailyPrices() {
+		return Collections.unmodifiableMap(dailyPrices);
 	}
 
+	@Override
+	public Map<BikeType, BigDecimal> getDailyRentalPrices() {
+		return getDailyPrices();
+	}
+
+	/**
+	 * @return a copy of the discounts in order of increasing discount, these should be added with addDiscount
+	 */
 	public ArrayList<DurationDiscount> getDurationDiscounts() {
-		return durationDiscounts;
+		return new ArrayList<DurationDiscount>(durationDiscounts);
 	}
 
 	/**
@@ -39,6 +61,7 @@ public class DiscountedPricing implements PricingPolicy{
 	public void setDailyRentalPrice(BikeType bikeType, BigDecimal price){
 		if (this.dailyPrices.containsKey(bikeType)){
 			this.dailyPrices.put(bikeType, price);
+			this.dailyPricesInPence = BikeTypeRegistry.withEntry(dailyPricesInPence, bikeType.getId(), new Money.PenceAmount(price));
 		}
 		else {
 			System.out.print("BikeType not in pricebook. Add type separately");
@@ -54,6 +77,7 @@ public class DiscountedPricing implements PricingPolicy{
 	public void addBikeTypeToPrices(BikeType bikeType, BigDecimal price) {
 		if (!this.dailyPrices.containsKey(bikeType)){
 			this.dailyPrices.put(bikeType, price);
+			this.dailyPricesInPence = BikeTypeRegistry.withEntry(dailyPricesInPence, bikeType.getId(), new Money.PenceAmount(price));
 		}
 		else {
 			System.out.print("BikeType already in pricebook");
@@ -62,65 +86,148 @@ public class DiscountedPricing implements PricingPolicy{
 		
 	/**
 	Inserts the inputted DurationDiscount in the correct position in the ArrayList
-	This should be in order of increasing discount value
+	This should be in order of increasing discount value, with equal discounts kept in the order they were added
+	The lookup table is then rebuilt
 	 */
-	public void addDiscount(DurationDiscount discount) {
-		int pos = 0;
-		if (durationDiscounts.size() != 0){
-			for (int i=0; i<durationDiscounts.size(); i++) {
-				DurationDiscount posD = durationDiscounts.get(i);
-				if (posD.discount.doubleValue()<discount.discount.doubleValue()) {
-					pos = i;
-				}
-			}
+	public synchronized void addDiscount(DurationDiscount discount) {
+		int pos = durationDiscounts.size();
+		while (pos > 0 && durationDiscounts.get(pos - 1).discount.compareTo(discount.discount) > 0) {
+			pos--;
 		}
 		durationDiscounts.add(pos, discount);
+		discountTable = new DiscountTable(durationDiscounts);
 	}
 
 	/**
-	 * This calculates the price of a quote given the Bikes and DateRange
-	 * 	To do this it multiplies the daily rate for each bike by the duration
+	 * This calculates the price of a quote given the number of bikes of each type and the DateRange
+	 * 	To do this it multiplies the daily rate for each type by the number of bikes and the duration
 	 * 	It then finds the best applicable discount and applies this
+	 * 	The total before the discount is worked out in pence, falling back to BigDecimal arithmetic
+	 * 	if a price has fractions of a penny or the total is too big for a long
 	 *
-	 * @param bikes the bikes to calculate the price for
+	 * @param bikeCounts a map from each BikeType to the number of bikes of that type
 	 * @param date the dates to calculate the price for
 	 * @return the total price to quote
 	 */
 	@Override
-	public BigDecimal calculatePrice(Collection<Bike> bikes, DateRange date) {
-		BigDecimal total = new BigDecimal(0);
-		for (Bike b: bikes) {
-			BikeType type = b.getType();
-			if (dailyPrices.containsKey(type)) {
-				total = total.add(dailyPrices.get(type).multiply(new BigDecimal(date.toDays())));
-			}
-			else {
-				System.out.print("Invalid BikeType in order");
+	public BigDecimal calculatePrice(Map<BikeType, Integer> bikeCounts, DateRange date) {
+		long days = date.toDays();
+		BigDecimal total;
+		Money.PenceAmount[] table = dailyPricesInPence;
+		try {
+			long totalPence = 0;
+			// The scale the BigDecimal sum would have, which is the largest scale of the prices added
+			int scale = 0;
+			boolean exact = true;
+			for (Map.Entry<BikeType, Integer> e: bikeCounts.entrySet()) {
+				int count = e.getValue();
+				if (count <= 0) continue;
+				Money.PenceAmount price = BikeTypeRegistry.lookup(table, e.getKey());
+				if (price != null) {
+					if (!price.isExact()) {
+						exact = false;
+						break;
+					}
+					totalPence = Math.addExact(totalPence, Math.multiplyExact(Math.multiplyExact(price.pence, days), count));
+					scale = Math.max(scale, price.scale);
+				}
+				else {
+					System.out.print("Invalid BikeType in order");
+				}
 			}
+			total = exact ? Money.fromPence(totalPence, scale) : calculateTotalExactly(bikeCounts, days);
 		}
-		
-		BigDecimal discount = findDiscount(date.toDays());
-		BigDecimal discountFactor = new BigDecimal(1).subtract(discount.divide(new BigDecimal(100)));
-		
-		return total.multiply(discountFactor);
+		catch (ArithmeticException e) {
+			total = calculateTotalExactly(bikeCounts, days);
+		}
+
+		return total.multiply(discountTable.findFactor(days));
 	}
 
 	/**
-	 *	To find the best available discount the discount ArrayList is looped through
-	 * 	If the duration, l, falls within the range of a discount we set the best to this discount
-	 * 	This works since the list is in order of increasing discount
-	 * @param l the length of days the bikes are being rented for
-	 * @return the best applicable discount as a percentage
+	 * Calculates the total before discount with BigDecimal arithmetic for prices that can't be held in pence
 	 */
-	private BigDecimal findDiscount(long l) {
-		DurationDiscount best = new DurationDiscount(0,0,new BigDecimal(0));
-		for (DurationDiscount d : durationDiscounts) {
-			if (d.min<=l & d.max>=l) best = d;
+	private BigDecimal calculateTotalExactly(Map<BikeType, Integer> bikeCounts, long days) {
+		BigDecimal total = BigDecimal.ZERO;
+		BigDecimal duration = BigDecimal.valueOf(days);
+		for (Map.Entry<BikeType, Integer> e: bikeCounts.entrySet()) {
+			BigDecimal price = dailyPrices.get(e.getKey());
+			if (price != null && e.getValue() > 0) {
+				total = total.add(price.multiply(duration).multiply(BigDecimal.valueOf(e.getValue())));
+			}
 		}
-		return best.discount;
-		
+		return total;
 	}
-		
-}
 
 
+	/**
+	 * The discounts compiled so the best one for a duration can be found without looking through them all.
+	 * Durations up to HORIZON days are looked up directly in an array, longer ones in a TreeMap from the
+	 * first day of each run of days that share the same best discount.
+	 * The table stores the factor to multiply prices by rather than the percentage, so the division by
+	 * 100 is done once here instead of for every quote
+	 */
+	private static class DiscountTable {
+
+		/** Durations up to this many days are looked up in the array */
+		private static final int HORIZON = 366;
+
+		private final BigDecimal[] factorByDays;
+		private final TreeMap<Long, BigDecimal> factorsBeyondHorizon;
+
+		/**
+		 * @param discounts the discounts in order of increasing discount
+		 */
+		private DiscountTable(ArrayList<DurationDiscount> discounts) {
+			BigDecimal[] factors = new BigDecimal[discounts.size()];
+			for (int i=0; i<factors.length; i++) {
+				factors[i] = Money.ONE.subtract(discounts.get(i).discount.divide(Money.HUNDRED));
+			}
+			BigDecimal noDiscount = Money.ONE.subtract(BigDecimal.ZERO.divide(Money.HUNDRED));
+
+			factorByDays = new BigDecimal[HORIZON + 1];
+			for (int l=0; l<=HORIZON; l++) {
+				factorByDays[l] = best(discounts, factors, noDiscount, l);
+			}
+
+			// The best discount can only change on the first day of a discount or the day after its last
+			TreeSet<Long> changes = new TreeSet<Long>();
+			changes.add((long) HORIZON + 1);
+			for (DurationDiscount d : discounts) {
+				if (d.min > HORIZON) changes.add((long) d.min);
+				if ((long) d.max + 1 > HORIZON) changes.add((long) d.max + 1);
+			}
+			factorsBeyondHorizon = new TreeMap<Long, BigDecimal>();
+			for (long l : changes) {
+				factorsBeyondHorizon.put(l, best(discounts, factors, noDiscount, l));
+			}
+		}
+
+		/**
+		 * @param l the length of days the bikes are being rented for
+		 * @return the factor to multiply the price by to apply the best discount
+		 */
+		private BigDecimal findFactor(long l) {
+			if (l >= 0 && l <= HORIZON) return factorByDays[(int) l];
+			Map.Entry<Long, BigDecimal> e = factorsBeyondHorizon.floorEntry(l);
+			// Rentals can't have a negative length, so these just get the price without a discount
+			return e == null ? Money.ONE : e.getValue();
+		}
+
+		/**
+		 *	To find the best available discount the discount ArrayList is looped through
+		 * 	If the duration, l, falls within the range of a discount we set the best to this discount
+		 * 	This works since the list is in order of increasing discount
+		 */
+		private static BigDecimal best(ArrayList<DurationDiscount> discounts, BigDecimal[] factors,
+				BigDecimal noDiscount, long l) {
+			BigDecimal best = noDiscount;
+			for (int i=0; i<factors.length; i++) {
+				DurationDiscount d = discounts.get(i);
+				if (d.min<=l & d.max>=l) best = factors[i];
+			}
+			return best;
+		}
+	}
+
+}
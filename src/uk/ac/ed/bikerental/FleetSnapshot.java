@@ -0,0 +1,470 @@
+package uk.ac.ed.bikerental;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary format for saving whole provider catalogues and loading them quickly at startup.
+ * A snapshot holds each provider's name, location, partners, daily prices, duration discounts and stock,
+ * with the status and booked dates of every bike. Valuation policies, delivery services and bookings aren't
+ * saved (the Journal records bookings).
+ *
+ * Every string (names, postcodes, addresses and decimal amounts) is stored once in a string table at the
+ * start and referred to by its index, so a type or price shared by thousands of bikes costs a byte or two
+ * each time. Numbers are written as variable length integers, and each bike's booked dates are written as
+ * the gap since the previous booking ended and the length of the booking, in days.
+ * Snapshots are read straight out of a memory-mapped file without copying it onto the heap first.
+ *
+ * Layout: [magic][version][base epoch day][string table][types][providers], where each provider is
+ * [name][postcode][address][pricing kind][prices][discounts][partners][stock per type].
+ */
+public class FleetSnapshot {
+
+	private static final int MAGIC = 0x424b464c;
+	private static final byte VERSION = 1;
+
+	/** Pricing kinds, policies other than these are saved and loaded as SimplePricing */
+	private static final byte SIMPLE_PRICING = 1;
+	private static final byte DISCOUNTED_PRICING = 2;
+
+	private static final BikeStatus[] STATUSES = BikeStatus.values();
+
+	private FleetSnapshot() {
+	}
+
+
+	// Writing
+
+	/**
+	 * Writes a snapshot of the providers to a file, replacing it atomically so a reader never sees half a
+	 * snapshot
+	 * @param providers the providers to save, any partners not among them are left out
+	 * @param file the file to write
+	 * @throws IOException if the file can't be written
+	 */
+	public static void write(Collection<BikeProvider> providers, Path file) throws IOException {
+		ByteBuffer state = encode(providers);
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (FileChannel c = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (state.hasRemaining()) {
+				c.write(state);
+			}
+			c.force(true);
+		}
+		Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Encodes the providers. Every stock change and booking is held up while the stock is copied
+	 * @param providers the providers to save, any partners not among them are left out
+	 * @return a buffer holding the snapshot, ready to be read
+	 */
+	public static ByteBuffer encode(Collection<BikeProvider> providers) {
+		Encoder encoder = new Encoder(providers);
+		ArrayList<BookingLock> locks = new ArrayList<BookingLock>();
+		for (BikeProvider p : providers) {
+			for (BikeType t : p.getBikeStocks().keySet()) {
+				locks.add(p.getAvailability(t).getLock());
+			}
+		}
+		ArrayList<BookingLock> taken = BookingLock.lockAll(locks);
+		try {
+			return encoder.encode();
+		}
+		finally {
+			BookingLock.unlockAll(taken);
+		}
+	}
+
+	private static class Encoder {
+		private final ArrayList<BikeProvider> providers = new ArrayList<BikeProvider>();
+		private final long baseDay = LocalDate.now().toEpochDay();
+
+		private final HashMap<String, Integer> strings = new HashMap<String, Integer>();
+		private final ArrayList<String> stringTable = new ArrayList<String>();
+		private final HashMap<BikeType, Integer> types = new HashMap<BikeType, Integer>();
+		private final ArrayList<BikeType> typeTable = new ArrayList<BikeType>();
+		private final IdentityHashMap<BikeProvider, Integer> providerIndex = new IdentityHashMap<BikeProvider, Integer>();
+
+		private Encoder(Collection<BikeProvider> providers) {
+			for (BikeProvider p : providers) {
+				if (providerIndex.putIfAbsent(p, providerIndex.size()) == null) this.providers.add(p);
+			}
+		}
+
+		private ByteBuffer encode() {
+			// The body and types are written first so the string table only holds what they use
+			Output body = new Output();
+			body.writeVarint(providers.size());
+			for (BikeProvider p : providers) {
+				writeProvider(body, p);
+			}
+			Output typesOut = new Output();
+			typesOut.writeVarint(typeTable.size());
+			for (BikeType t : typeTable) {
+				typesOut.writeVarint(string(t.getName()));
+				typesOut.writeVarint(string(t.getReplacementValue().toString()));
+			}
+
+			Output out = new Output();
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeLong(baseDay);
+			out.writeVarint(stringTable.size());
+			for (String s : stringTable) {
+				byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+				out.writeVarint(utf8.length);
+				out.write(utf8, 0, utf8.length);
+			}
+			out.write(typesOut.bytes, 0, typesOut.size());
+			out.write(body.bytes, 0, body.size());
+			return ByteBuffer.wrap(out.bytes, 0, out.size());
+		}
+
+		private void writeProvider(Output out, BikeProvider p) {
+			out.writeVarint(string(p.getName()));
+			Location location = p.getLocation();
+			out.writeVarint(string(location == null ? null : location.getPostcode()));
+			out.writeVarint(string(location == null ? null : location.getAddress()));
+
+			PricingPolicy pricing = p.getPricing();
+			out.writeByte(pricing instanceof DiscountedPricing ? DISCOUNTED_PRICING : SIMPLE_PRICING);
+			Map<BikeType, BigDecimal> prices = pricing.getDailyRentalPrices();
+			out.writeVarint(prices.size());
+			for (Map.Entry<BikeType, BigDecimal> e : prices.entrySet()) {
+				out.writeVarint(type(e.getKey()));
+				out.writeVarint(string(e.getValue().toString()));
+			}
+			if (pricing instanceof DiscountedPricing) {
+				ArrayList<DurationDiscount> discounts = ((DiscountedPricing) pricing).getDurationDiscounts();
+				out.writeVarint(discounts.size());
+				for (DurationDiscount d : discounts) {
+					out.writeSignedVarint(d.min);
+					out.writeSignedVarint(d.max);
+					out.writeVarint(string(d.discount.toString()));
+				}
+			}
+
+			ArrayList<Integer> partners = new ArrayList<Integer>();
+			for (BikeProvider partner : p.getPartners()) {
+				Integer index = providerIndex.get(partner);
+				if (index != null) partners.add(index);
+			}
+			out.writeVarint(partners.size());
+			for (int index : partners) {
+				out.writeVarint(index);
+			}
+
+			Map<BikeType, List<Bike>> stocks = p.getBikeStocks();
+			out.writeVarint(stocks.size());
+			for (Map.Entry<BikeType, List<Bike>> e : stocks.entrySet()) {
+				out.writeVarint(type(e.getKey()));
+				out.writeVarint(e.getValue().size());
+				for (Bike b : e.getValue()) {
+					out.writeByte((byte) b.getBikeStatus().ordinal());
+					Collection<DateRange> dates = b.bookedDates();
+					out.writeVarint(dates.size());
+					// The dates are in order so each booking is written relative to the end of the one before
+					long previousEnd = baseDay;
+					for (DateRange d : dates) {
+						long start = d.getStartEpochDay();
+						long end = d.getEndEpochDay();
+						out.writeSignedVarint(start - previousEnd);
+						out.writeSignedVarint(end - start);
+						previousEnd = end;
+					}
+				}
+			}
+		}
+
+		/**
+		 * @return the index of the string in the table plus one, or 0 for null
+		 */
+		private int string(String s) {
+			if (s == null) return 0;
+			Integer index = strings.get(s);
+			if (index == null) {
+				index = stringTable.size() + 1;
+				strings.put(s, index);
+				stringTable.add(s);
+			}
+			return index;
+		}
+
+		private int type(BikeType t) {
+			Integer index = types.get(t);
+			if (index == null) {
+				index = typeTable.size();
+				types.put(t, index);
+				typeTable.add(t);
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * A growable byte array with variable length integer encoding
+	 */
+	private static class Output {
+		private byte[] bytes = new byte[4096];
+		private int size;
+
+		private int size() {
+			return size;
+		}
+
+		private void ensure(int extra) {
+			if (size + extra > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+		}
+
+		private void writeByte(byte b) {
+			ensure(1);
+			bytes[size++] = b;
+		}
+
+		private void writeInt(int v) {
+			ensure(4);
+			ByteBuffer.wrap(bytes, size, 4).putInt(v);
+			size += 4;
+		}
+
+		private void writeLong(long v) {
+			ensure(8);
+			ByteBuffer.wrap(bytes, size, 8).putLong(v);
+			size += 8;
+		}
+
+		private void write(byte[] b, int offset, int length) {
+			ensure(length);
+			System.arraycopy(b, offset, bytes, size, length);
+			size += length;
+		}
+
+		/**
+		 * Writes a non-negative number 7 bits at a time, with the top bit of each byte set if more follow
+		 */
+		private void writeVarint(long v) {
+			ensure(10);
+			while ((v & ~0x7fL) != 0) {
+				bytes[size++] = (byte) ((v & 0x7f) | 0x80);
+				v >>>= 7;
+			}
+			bytes[size++] = (byte) v;
+		}
+
+		/**
+		 * Writes a number that may be negative, zigzag encoded so small negative numbers stay short
+		 */
+		private void writeSignedVarint(long v) {
+			writeVarint((v << 1) ^ (v >> 63));
+		}
+	}
+
+
+	// Reading
+
+	/**
+	 * Loads the providers saved in a snapshot file, reading it through a memory mapping
+	 * @param file the snapshot file
+	 * @param knownTypes the BikeTypes the system already has, types with the same names are used for the
+	 *                   loaded bikes and new ones are created for any other names
+	 * @param valuation the valuation policy to give each provider
+	 * @param deliveryService the delivery service to give each provider
+	 * @return the loaded providers, in the order they were saved
+	 * @throws IOException if the file can't be read or isn't a valid snapshot
+	 */
+	public static ArrayList<BikeProvider> read(Path file, Collection<BikeType> knownTypes,
+			ValuationPolicy valuation, DeliveryService deliveryService) throws IOException {
+		try (FileChannel c = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = c.map(FileChannel.MapMode.READ_ONLY, 0, c.size());
+			return decode(buffer, knownTypes, valuation, deliveryService);
+		}
+	}
+
+	/**
+	 * Loads the providers saved in a snapshot from a buffer, starting at its position
+	 * @param buffer the snapshot
+	 * @param knownTypes the BikeTypes the system already has, types with the same names are used for the
+	 *                   loaded bikes and new ones are created for any other names
+	 * @param valuation the valuation policy to give each provider
+	 * @param deliveryService the delivery service to give each provider
+	 * @return the loaded providers, in the order they were saved
+	 * @throws IOException if the buffer doesn't hold a valid snapshot
+	 */
+	public static ArrayList<BikeProvider> decode(ByteBuffer buffer, Collection<BikeType> knownTypes,
+			ValuationPolicy valuation, DeliveryService deliveryService) throws IOException {
+		try {
+			return new Decoder(buffer, knownTypes).decode(valuation, deliveryService);
+		}
+		catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+			throw new IOException("Fleet snapshot is corrupt", e);
+		}
+	}
+
+	private static class Decoder {
+		private final ByteBuffer in;
+		private final HashMap<String, BikeType> typesByName = new HashMap<String, BikeType>();
+
+		private String[] strings;
+		private BikeType[] types;
+		private long baseDay;
+
+		private Decoder(ByteBuffer buffer, Collection<BikeType> knownTypes) {
+			this.in = buffer.duplicate();
+			for (BikeType t : knownTypes) {
+				typesByName.putIfAbsent(t.getName(), t);
+			}
+		}
+
+		private ArrayList<BikeProvider> decode(ValuationPolicy valuation, DeliveryService deliveryService) throws IOException {
+			if (in.getInt() != MAGIC) throw new IOException("Not a fleet snapshot");
+			if (in.get() != VERSION) throw new IOException("Unsupported fleet snapshot version");
+			baseDay = in.getLong();
+
+			strings = new String[readCount() + 1];
+			for (int i=1; i<strings.length; i++) {
+				int length = readCount();
+				strings[i] = StandardCharsets.UTF_8.decode(slice(length)).toString();
+			}
+
+			types = new BikeType[readCount()];
+			for (int i=0; i<types.length; i++) {
+				String name = readString();
+				BigDecimal replacementValue = new BigDecimal(readString());
+				BikeType type = typesByName.get(name);
+				if (type == null) {
+					type = new BikeType(name, replacementValue);
+					typesByName.put(name, type);
+				}
+				types[i] = type;
+			}
+
+			int count = readCount();
+			ArrayList<BikeProvider> providers = new ArrayList<BikeProvider>(count);
+			int[][] partners = new int[count][];
+			for (int i=0; i<count; i++) {
+				String name = readString();
+				String postcode = readString();
+				String address = readString();
+				Location location = postcode == null ? null : new Location(postcode, address);
+				BikeProvider provider = new BikeProvider(name, location, readPricing(), valuation, deliveryService);
+
+				partners[i] = new int[readCount()];
+				for (int j=0; j<partners[i].length; j++) {
+					partners[i][j] = readCount();
+				}
+				readStock(provider);
+				providers.add(provider);
+			}
+
+			// Partners are linked once every provider exists
+			for (int i=0; i<count; i++) {
+				for (int index : partners[i]) {
+					providers.get(i).addPartner(providers.get(index));
+				}
+			}
+			return providers;
+		}
+
+		private PricingPolicy readPricing() {
+			byte kind = in.get();
+			int count = readCount();
+			if (kind == DISCOUNTED_PRICING) {
+				DiscountedPricing pricing = new DiscountedPricing();
+				for (int i=0; i<count; i++) {
+					pricing.addBikeTypeToPrices(readType(), new BigDecimal(readString()));
+				}
+				int discounts = readCount();
+				for (int i=0; i<discounts; i++) {
+					int min = (int) readSignedVarint();
+					int max = (int) readSignedVarint();
+					// The discounts were saved in order so adding them keeps the order of equal discounts
+					pricing.addDiscount(new DurationDiscount(min, max, new BigDecimal(readString())));
+				}
+				return pricing;
+			}
+			SimplePricing pricing = new SimplePricing();
+			for (int i=0; i<count; i++) {
+				pricing.setDailyRentalPrice(readType(), new BigDecimal(readString()));
+			}
+			return pricing;
+		}
+
+		private void readStock(BikeProvider provider) {
+			int typeCount = readCount();
+			for (int i=0; i<typeCount; i++) {
+				BikeType type = readType();
+				int count = readCount();
+				ArrayList<Bike> bikes = new ArrayList<Bike>(count);
+				for (int j=0; j<count; j++) {
+					Bike bike = new Bike(type);
+					bike.restoreStatus(STATUSES[in.get()]);
+					int dates = readCount();
+					long previousEnd = baseDay;
+					for (int k=0; k<dates; k++) {
+						long start = previousEnd + readSignedVarint();
+						long end = start + readSignedVarint();
+						bike.restoreDate(DateRange.ofEpochDays(start, end));
+						previousEnd = end;
+					}
+					bikes.add(bike);
+				}
+				provider.addBikes(bikes);
+			}
+		}
+
+		private ByteBuffer slice(int length) {
+			ByteBuffer s = in.slice();
+			s.limit(length);
+			in.position(in.position() + length);
+			return s;
+		}
+
+		private String readString() {
+			return strings[readCount()];
+		}
+
+		private BikeType readType() {
+			return types[readCount()];
+		}
+
+		private int readCount() {
+			long v = readVarint();
+			if (v > Integer.MAX_VALUE) throw new IllegalArgumentException("Count too large");
+			return (int) v;
+		}
+
+		private long readVarint() {
+			long v = 0;
+			for (int shift=0; shift<64; shift+=7) {
+				byte b = in.get();
+				v |= (long) (b & 0x7f) << shift;
+				if (b >= 0) return v;
+			}
+			throw new IllegalArgumentException("Malformed varint");
+		}
+
+		private long readSignedVarint() {
+			long v = readVarint();
+			return (v >>> 1) ^ -(v & 1);
+		}
+	}
+}
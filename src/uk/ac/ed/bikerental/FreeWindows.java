@@ -0,0 +1,187 @@
+package uk.ac.ed.bikerental;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Finds the dates a number of bikes are free for a whole rental by sweeping over their bookings once,
+ * rather than trying candidate dates one at a time.
+ * Sets of days are held as sorted, disjoint intervals in a flat array [first0, last0, first1, last1, ...]
+ * of inclusive epoch days, where a day is the first day of a rental starting then.
+ */
+class FreeWindows {
+
+	private static final long[] NONE = new long[0];
+
+	private FreeWindows() {
+	}
+
+	/**
+	 * Works out the days a rental can start on with at least the needed number of the bikes free for all of it.
+	 * Each bike's gaps between bookings give the days a rental fitting in the gap can start, and a sweep over
+	 * the starts and ends of these counts how many bikes are free at once.
+	 * The bookings of the bikes mustn't change while this runs
+	 * @param bikes the bikes to choose from, which should be in date order and not overlap for each bike
+	 * @param needed the number of bikes needed
+	 * @param length the number of days after the first day the rental lasts for (as in DateRange.toDays)
+	 * @param from the earliest start day to consider
+	 * @param to the latest start day to consider
+	 * @return the intervals of start days that work
+	 */
+	static long[] feasibleStarts(Collection<Bike> bikes, int needed, long length, long from, long to) {
+		if (from > to) return NONE;
+		if (needed <= 0) return new long[] {from, to};
+
+		// The start and the day after the end of every interval in which a bike is free to start a rental
+		long[] starts = new long[16];
+		long[] ends = new long[16];
+		int n = 0;
+		for (Bike b : bikes) {
+			if (!b.isAvailable()) continue;
+			long cursor = from;
+			for (DateRange d : b.bookedDates()) {
+				if (d.getEndEpochDay() < cursor) continue;
+				long lastStart = Math.min((long) d.getStartEpochDay() - 1 - length, to);
+				if (lastStart >= cursor) {
+					if (n == starts.length) {
+						starts = Arrays.copyOf(starts, n * 2);
+						ends = Arrays.copyOf(ends, n * 2);
+					}
+					starts[n] = cursor;
+					ends[n++] = lastStart + 1;
+				}
+				cursor = Math.max(cursor, (long) d.getEndEpochDay() + 1);
+				if (cursor > to) break;
+			}
+			if (cursor <= to) {
+				if (n == starts.length) {
+					starts = Arrays.copyOf(starts, n * 2);
+					ends = Arrays.copyOf(ends, n * 2);
+				}
+				starts[n] = cursor;
+				ends[n++] = to + 1;
+			}
+		}
+		if (n < needed) return NONE;
+
+		Arrays.sort(starts, 0, n);
+		Arrays.sort(ends, 0, n);
+		LongList result = new LongList();
+		int i = 0;
+		int j = 0;
+		int free = 0;
+		long open = 0;
+		boolean inside = false;
+		// Every interval ends after it starts, so there are always ends left while there are starts left
+		while (j < n) {
+			long day = i < n ? Math.min(starts[i], ends[j]) : ends[j];
+			while (i < n && starts[i] == day) {
+				free++;
+				i++;
+			}
+			while (j < n && ends[j] == day) {
+				free--;
+				j++;
+			}
+			if (!inside && free >= needed) {
+				open = day;
+				inside = true;
+			}
+			else if (inside && free < needed) {
+				result.add(open, day - 1);
+				inside = false;
+			}
+		}
+		return result.toArray();
+	}
+
+	/**
+	 * @return the days in both sets of intervals
+	 */
+	static long[] intersect(long[] a, long[] b) {
+		LongList result = new LongList();
+		int i = 0;
+		int j = 0;
+		while (i < a.length && j < b.length) {
+			long first = Math.max(a[i], b[j]);
+			long last = Math.min(a[i + 1], b[j + 1]);
+			if (first <= last) result.add(first, last);
+			if (a[i + 1] < b[j + 1]) i += 2;
+			else j += 2;
+		}
+		return result.toArray();
+	}
+
+	/**
+	 * Picks the start days closest to the desired one, the earlier day first when two are as close
+	 * @param starts the intervals of start days that work
+	 * @param desired the start day wanted
+	 * @param length the number of days after the first day the rental lasts for
+	 * @param max the most windows to return
+	 * @return the rentals starting on the closest days, closest first
+	 */
+	static ArrayList<DateRange> closest(long[] starts, long desired, long length, int max) {
+		ArrayList<DateRange> windows = new ArrayList<DateRange>();
+		long before = previous(starts, desired - 1);
+		long after = next(starts, desired);
+		while (windows.size() < max && (before != Long.MIN_VALUE || after != Long.MAX_VALUE)) {
+			long day;
+			if (after == Long.MAX_VALUE || (before != Long.MIN_VALUE && desired - before <= after - desired)) {
+				day = before;
+				before = previous(starts, before - 1);
+			}
+			else {
+				day = after;
+				after = next(starts, after + 1);
+			}
+			windows.add(DateRange.ofEpochDays(day, day + length));
+		}
+		return windows;
+	}
+
+	/**
+	 * @return the first day in the intervals on or after the day, or Long.MAX_VALUE if there isn't one
+	 */
+	private static long next(long[] intervals, long day) {
+		int lo = 0;
+		int hi = intervals.length / 2;
+		// Finds the first interval ending on or after the day
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (intervals[2 * mid + 1] < day) lo = mid + 1;
+			else hi = mid;
+		}
+		return lo == intervals.length / 2 ? Long.MAX_VALUE : Math.max(intervals[2 * lo], day);
+	}
+
+	/**
+	 * @return the last day in the intervals on or before the day, or Long.MIN_VALUE if there isn't one
+	 */
+	private static long previous(long[] intervals, long day) {
+		int lo = 0;
+		int hi = intervals.length / 2;
+		// Finds the first interval starting after the day, the one before it is the one wanted
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (intervals[2 * mid] <= day) lo = mid + 1;
+			else hi = mid;
+		}
+		return lo == 0 ? Long.MIN_VALUE : Math.min(intervals[2 * lo - 1], day);
+	}
+
+	private static class LongList {
+		private long[] values = new long[8];
+		private int size;
+
+		private void add(long first, long last) {
+			if (size + 2 > values.length) values = Arrays.copyOf(values, values.length * 2);
+			values[size++] = first;
+			values[size++] = last;
+		}
+
+		private long[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+	}
+}
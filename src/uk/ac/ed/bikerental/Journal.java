@@ -0,0 +1,866 @@
+package uk.ac.ed.bikerental;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * A write-ahead journal of the changes made to providers: bikes being added and removed, bookings being made
+ * and returned, and daily prices being set. After a restart the state can be rebuilt with recover.
+ *
+ * Events are appended to memory-mapped segment files of a fixed size, each named after the sequence number
+ * of its first event. Every record is [body length][CRC32 of body][body], where the body is the event's
+ * sequence number, type and data, so a record torn by a crash is detected and ignored.
+ * Appending only copies the record into the mapped segment. commit makes events durable, and threads that
+ * commit at the same time share a single flush of the segment to disk (group commit).
+ *
+ * Snapshots of the whole state can be taken (periodically with startSnapshots) so that recovery loads the
+ * latest snapshot and only replays the events after it. Segments and snapshots that are no longer needed
+ * are deleted once a snapshot has been written.
+ *
+ * Bikes are identified in events by their provider's name, their BikeType's name and their slot, so provider
+ * names must be unique. Events are journaled while the locks of the bikes involved are held, so they are
+ * in the same order as the changes they record.
+ */
+public class Journal implements AutoCloseable {
+
+	/** The size of each segment file by default */
+	public static final int DEFAULT_SEGMENT_BYTES = 16 * 1024 * 1024;
+
+	static final byte BIKE_ADDED = 1;
+	static final byte BIKE_REMOVED = 2;
+	static final byte BOOKED = 3;
+	static final byte RETURNED = 4;
+	static final byte PRICE_SET = 5;
+
+	private static final String SEGMENT_PREFIX = "journal-";
+	private static final String SEGMENT_SUFFIX = ".seg";
+	private static final String SNAPSHOT_PREFIX = "snapshot-";
+	private static final String SNAPSHOT_SUFFIX = ".snap";
+	private static final int SNAPSHOT_MAGIC = 0x424b534e;
+	private static final int RECORD_HEADER_BYTES = 8;
+
+	private final Path directory;
+	private final int segmentBytes;
+
+	/** Guards appending to the current segment and moving on to the next one */
+	private final Object appendLock = new Object();
+	private FileChannel channel;
+	private MappedByteBuffer segment;
+	private long lastSeq;
+
+	/** Guards flushing the segment to disk, so only one thread flushes at a time */
+	private final Object syncLock = new Object();
+	private volatile long durableSeq;
+
+	private final AtomicLong eventsWritten = new AtomicLong();
+	private final AtomicLong bytesWritten = new AtomicLong();
+	private final AtomicLong syncs = new AtomicLong();
+
+	private ScheduledExecutorService snapshotter;
+
+	/** Failures of the background snapshots, which would otherwise go unseen */
+	private final AtomicLong snapshotFailures = new AtomicLong();
+	private volatile Exception lastSnapshotFailure;
+
+
+	/**
+	 * Opens the journal in a directory with the default segment size, creating the directory if needed
+	 * @param directory the directory holding the segments and snapshots
+	 * @throws IOException if the journal can't be opened
+	 */
+	public Journal(Path directory) throws IOException {
+		this(directory, DEFAULT_SEGMENT_BYTES);
+	}
+
+	/**
+	 * Opens the journal in a directory, creating the directory if needed.
+	 * New events are written to a new segment following on from the events already in the directory,
+	 * so recover should be called before the journal is opened
+	 * @param directory the directory holding the segments and snapshots
+	 * @param segmentBytes the size of each segment file
+	 * @throws IOException if the journal can't be opened
+	 */
+	public Journal(Path directory, int segmentBytes) throws IOException {
+		assert segmentBytes > RECORD_HEADER_BYTES;
+		this.directory = directory;
+		this.segmentBytes = segmentBytes;
+		Files.createDirectories(directory);
+
+		long last = 0;
+		ArrayList<Long> snapshots = listFiles(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+		if (!snapshots.isEmpty()) last = snapshots.get(snapshots.size() - 1);
+		ArrayList<Long> segments = listFiles(directory, SEGMENT_PREFIX, SEGMENT_SUFFIX);
+		if (!segments.isEmpty()) {
+			long first = segments.get(segments.size() - 1);
+			last = Math.max(last, first - 1);
+			for (Record r : readSegment(segmentPath(directory, first))) {
+				last = Math.max(last, r.seq);
+			}
+		}
+		this.lastSeq = last;
+		this.durableSeq = last;
+		openSegment(last + 1);
+	}
+
+	// Recording events, each of these returns the sequence number to pass to commit
+
+	/**
+	 * Records that a bike has been added to a provider, the write lock of the bike's calendar must be held
+	 * @param provider the provider the bike was added to
+	 * @param bike the bike, which must already be in its slot
+	 * @return the sequence number of the event
+	 */
+	public long recordBikeAdded(BikeProvider provider, Bike bike) {
+		return append(BIKE_ADDED, out -> {
+			out.writeUTF(provider.getName());
+			out.writeUTF(bike.getType().getName());
+			out.writeUTF(bike.getType().getReplacementValue().toString());
+			out.writeInt(bike.getSlot());
+		});
+	}
+
+	/**
+	 * Records that a bike has been removed from a provider, the write lock of the bike's calendar must be held
+	 * @param provider the provider the bike was removed from
+	 * @param type the type of the bike
+	 * @param slot the slot the bike was in
+	 * @return the sequence number of the event
+	 */
+	public long recordBikeRemoved(BikeProvider provider, BikeType type, int slot) {
+		return append(BIKE_REMOVED, out -> {
+			out.writeUTF(provider.getName());
+			out.writeUTF(type.getName());
+			out.writeInt(slot);
+		});
+	}
+
+	/**
+	 * Records a booking that has been paid for, the write locks of its bikes must be held
+	 * @param booking the booking
+	 * @return the sequence number of the event
+	 */
+	public long recordBooking(BookedQuote booking) {
+		return append(BOOKED, out -> writeBooking(out, booking));
+	}
+
+	/**
+	 * Records that a booking has been returned, the write locks of its bikes must be held
+	 * @param booking the booking
+	 * @return the sequence number of the event
+	 */
+	public long recordReturn(BookedQuote booking) {
+		return append(RETURNED, out -> out.writeUTF(booking.getBookingID()));
+	}
+
+	/**
+	 * Records a provider setting the daily rental price of a BikeType
+	 * @param provider the provider
+	 * @param type the BikeType
+	 * @param price the new daily price
+	 * @return the sequence number of the event
+	 */
+	public long recordPrice(BikeProvider provider, BikeType type, BigDecimal price) {
+		return append(PRICE_SET, out -> {
+			out.writeUTF(provider.getName());
+			out.writeUTF(type.getName());
+			out.writeUTF(type.getReplacementValue().toString());
+			out.writeUTF(price.toString());
+		});
+	}
+
+	/**
+	 * Waits until every event up to the given one is on disk.
+	 * If another thread is already flushing, this waits for it and then only flushes again if that
+	 * flush didn't cover the event, so the flushes of many threads are grouped together
+	 * @param seq the sequence number of an event
+	 */
+	public void commit(long seq) {
+		if (durableSeq >= seq) return;
+		synchronized (syncLock) {
+			if (durableSeq >= seq) return;
+			long upTo;
+			MappedByteBuffer toFlush;
+			synchronized (appendLock) {
+				upTo = lastSeq;
+				toFlush = segment;
+			}
+			toFlush.force();
+			syncs.incrementAndGet();
+			durableSeq = upTo;
+		}
+	}
+
+	/**
+	 * Makes every event recorded so far durable
+	 */
+	public void commit() {
+		long seq;
+		synchronized (appendLock) {
+			seq = lastSeq;
+		}
+		commit(seq);
+	}
+
+	/**
+	 * @return the sequence number of the last event recorded
+	 */
+	public long getLastSeq() {
+		synchronized (appendLock) {
+			return lastSeq;
+		}
+	}
+
+	public long getEventsWritten() {
+		return eventsWritten.get();
+	}
+
+	public long getBytesWritten() {
+		return bytesWritten.get();
+	}
+
+	/**
+	 * @return the number of times the journal has been flushed to disk, which is less than the
+	 * number of commits when commits have been grouped
+	 */
+	public long getSyncs() {
+		return syncs.get();
+	}
+
+	/**
+	 * Writes a snapshot of the providers, after which recovery only replays events recorded after it.
+	 * Every stock and booking change is held up while the state is copied, but not while it's written out
+	 * @param providers every provider whose changes are journaled
+	 * @return the sequence number of the last event included in the snapshot
+	 * @throws IOException if the snapshot can't be written
+	 */
+	public long snapshot(Collection<BikeProvider> providers) throws IOException {
+		long seq = -1;
+		byte[] state = null;
+		while (state == null) {
+			// The calendar locks are taken before the journal's, in the same order as when events are recorded
+			ArrayList<BookingLock> locks = calendarLocks(providers);
+			ArrayList<BookingLock> taken = BookingLock.lockAll(locks);
+			try {
+				synchronized (appendLock) {
+					// If a provider stocked a new type while the locks were being taken, its bikes
+					// might not be in step with the journal so we start again
+					if (calendarLocks(providers).size() == locks.size()) {
+						seq = lastSeq;
+						state = encodeSnapshot(providers, seq);
+					}
+				}
+			}
+			finally {
+				BookingLock.unlockAll(taken);
+			}
+		}
+
+		Path tmp = directory.resolve(SNAPSHOT_PREFIX + "tmp");
+		Files.write(tmp, state);
+		try (FileChannel c = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+			c.force(true);
+		}
+		Files.move(tmp, snapshotPath(directory, seq), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		deleteCoveredFiles(seq);
+		return seq;
+	}
+
+	/**
+	 * Takes a snapshot every period in a background thread until the journal is closed.
+	 * A snapshot that fails is recorded (see getLastSnapshotFailure) and the next one is still taken
+	 * @param providers every provider whose changes are journaled
+	 * @param periodMillis the time between snapshots in milliseconds
+	 */
+	public synchronized void startSnapshots(Collection<BikeProvider> providers, long periodMillis) {
+		stopSnapshots();
+		snapshotter = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "journal-snapshots");
+			t.setDaemon(true);
+			return t;
+		});
+		snapshotter.scheduleAtFixedRate(() -> {
+			// Anything thrown out of here would cancel every later snapshot
+			try {
+				snapshot(providers);
+			}
+			catch (Exception e) {
+				lastSnapshotFailure = e;
+				snapshotFailures.incrementAndGet();
+			}
+		}, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return the number of background snapshots that have failed
+	 */
+	public long getSnapshotFailures() {
+		return snapshotFailures.get();
+	}
+
+	/**
+	 * @return why the last background snapshot to fail failed, or null if none have
+	 */
+	public Exception getLastSnapshotFailure() {
+		return lastSnapshotFailure;
+	}
+
+	/**
+	 * Stops the background snapshots, letting one that is being written finish so it isn't interrupted
+	 */
+	private synchronized void stopSnapshots() {
+		if (snapshotter == null) return;
+		snapshotter.shutdown();
+		try {
+			snapshotter.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		snapshotter = null;
+	}
+
+	/**
+	 * Makes everything durable and closes the current segment
+	 * @throws IOException if the segment can't be closed, or if any background snapshot failed (with the
+	 * last failure as the cause) once the journal has been closed
+	 */
+	@Override
+	public void close() throws IOException {
+		stopSnapshots();
+		commit();
+		synchronized (appendLock) {
+			channel.close();
+		}
+		Exception failure = lastSnapshotFailure;
+		if (failure != null) {
+			throw new IOException(snapshotFailures.get() + " background journal snapshots failed", failure);
+		}
+	}
+
+
+	// Writing
+
+	private static ArrayList<BookingLock> calendarLocks(Collection<BikeProvider> providers) {
+		ArrayList<BookingLock> locks = new ArrayList<BookingLock>();
+		for (BikeProvider p : providers) {
+			for (BikeType t : p.getBikeStocks().keySet()) {
+				locks.add(p.getAvailability(t).getLock());
+			}
+		}
+		return locks;
+	}
+
+	private interface EventWriter {
+		void write(DataOutputStream out) throws IOException;
+	}
+
+	private long append(byte type, EventWriter writer) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeLong(0);
+			out.writeByte(type);
+			writer.write(out);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		byte[] body = bytes.toByteArray();
+		if (body.length + RECORD_HEADER_BYTES > segmentBytes - 4) {
+			throw new IllegalArgumentException("Journal event is bigger than a segment");
+		}
+
+		synchronized (appendLock) {
+			long seq = lastSeq + 1;
+			ByteBuffer.wrap(body).putLong(0, seq);
+			CRC32 crc = new CRC32();
+			crc.update(body);
+
+			// A zero length is left after the last record so readers know where the segment ends
+			if (segment.position() + RECORD_HEADER_BYTES + body.length > segmentBytes - 4) {
+				rollSegment(seq);
+			}
+			segment.putInt(body.length);
+			segment.putInt((int) crc.getValue());
+			segment.put(body);
+			segment.putInt(segment.position(), 0);
+			lastSeq = seq;
+			eventsWritten.incrementAndGet();
+			bytesWritten.addAndGet(RECORD_HEADER_BYTES + body.length);
+			return seq;
+		}
+	}
+
+	/**
+	 * Flushes and closes the current segment and starts a new one, the append lock must be held
+	 */
+	private void rollSegment(long firstSeq) {
+		segment.force();
+		try {
+			channel.close();
+			openSegment(firstSeq);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void openSegment(long firstSeq) throws IOException {
+		channel = FileChannel.open(segmentPath(directory, firstSeq),
+				StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+	}
+
+	/**
+	 * Deletes the snapshots before the given one and the segments whose events are all in it
+	 */
+	private void deleteCoveredFiles(long snapshotSeq) throws IOException {
+		for (long s : listFiles(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+			if (s < snapshotSeq) Files.deleteIfExists(snapshotPath(directory, s));
+		}
+		ArrayList<Long> segments = listFiles(directory, SEGMENT_PREFIX, SEGMENT_SUFFIX);
+		for (int i=0; i + 1 < segments.size(); i++) {
+			if (segments.get(i + 1) <= snapshotSeq + 1) Files.deleteIfExists(segmentPath(directory, segments.get(i)));
+		}
+	}
+
+	private static void writeBooking(DataOutputStream out, BookedQuote booking) throws IOException {
+		out.writeUTF(booking.getBookingID());
+		out.writeUTF(booking.getProvider().getName());
+		BikeProvider partner = booking.getPartnerToReturnTo();
+		writeNullable(out, partner == null ? null : partner.getName());
+		Customer c = booking.getCustomer();
+		writeNullable(out, c.getFirstname());
+		writeNullable(out, c.getSurname());
+		Location address = c.getAddress();
+		writeNullable(out, address == null ? null : address.getPostcode());
+		writeNullable(out, address == null ? null : address.getAddress());
+		out.writeLong(booking.getDates().getStartEpochDay());
+		out.writeLong(booking.getDates().getEndEpochDay());
+		out.writeUTF(booking.getPrice().toString());
+		out.writeUTF(booking.getDeposit().toString());
+		out.writeUTF(booking.getStatus());
+		out.writeInt(booking.getBikes().size());
+		for (Bike b : booking.getBikes()) {
+			out.writeUTF(b.getType().getName());
+			out.writeInt(b.getSlot());
+		}
+	}
+
+	private static void writeNullable(DataOutputStream out, String s) throws IOException {
+		out.writeBoolean(s != null);
+		if (s != null) out.writeUTF(s);
+	}
+
+	private static byte[] encodeSnapshot(Collection<BikeProvider> providers, long seq) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(SNAPSHOT_MAGIC);
+		out.writeLong(seq);
+		// Returned bookings aren't in the snapshot or the registries, so the highest ID given out is kept
+		// for recovery to carry on from
+		long highestId = -1;
+		BookingIdGenerator generator = BookedQuote.getIdGenerator();
+		if (generator instanceof SequentialIdGenerator) highestId = ((SequentialIdGenerator) generator).getLastId();
+		for (BikeProvider p : providers) {
+			for (BookedQuote bq : p.getBookings().getBookings()) {
+				highestId = Math.max(highestId, SequentialIdGenerator.parse(bq.getBookingID()));
+			}
+		}
+		out.writeLong(highestId);
+		out.writeInt(providers.size());
+		for (BikeProvider p : providers) {
+			out.writeUTF(p.getName());
+
+			Map<BikeType, List<Bike>> stocks = p.getBikeStocks();
+			out.writeInt(stocks.size());
+			for (Map.Entry<BikeType, List<Bike>> e : stocks.entrySet()) {
+				out.writeUTF(e.getKey().getName());
+				out.writeUTF(e.getKey().getReplacementValue().toString());
+				out.writeInt(e.getValue().size());
+				for (Bike b : e.getValue()) {
+					out.writeUTF(b.getStatus());
+					out.writeInt(b.bookedDates().size());
+					for (DateRange d : b.bookedDates()) {
+						out.writeLong(d.getStartEpochDay());
+						out.writeLong(d.getEndEpochDay());
+					}
+				}
+			}
+
+			Map<BikeType, BigDecimal> prices = p.getPricing().getDailyRentalPrices();
+			out.writeInt(prices.size());
+			for (Map.Entry<BikeType, BigDecimal> e : prices.entrySet()) {
+				out.writeUTF(e.getKey().getName());
+				out.writeUTF(e.getKey().getReplacementValue().toString());
+				out.writeUTF(e.getValue().toString());
+			}
+
+			// Only the bookings made with this provider that haven't been returned yet are needed
+			ArrayList<BookedQuote> outstanding = new ArrayList<BookedQuote>();
+			for (BookedQuote bq : p.getBookings().getBookings()) {
+				if (bq.getProvider() == p && bq.getBookingStatus() != BookingStatus.RETURNED) outstanding.add(bq);
+			}
+			out.writeInt(outstanding.size());
+			for (BookedQuote bq : outstanding) {
+				writeBooking(out, bq);
+			}
+		}
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+
+	// Recovery
+
+	/**
+	 * Rebuilds the state recorded in a journal directory: the latest snapshot is loaded and the events after
+	 * it are replayed. This should be done before a Journal is opened on the directory and before the
+	 * providers are given a journal, so that replaying doesn't record the events again.
+	 * The providers should be set up as they were (with their names, locations, policies and partners) but
+	 * with no bikes. BikeTypes are matched by name and created for any names not in knownTypes.
+	 * Customers are recreated from the names and addresses in the bookings.
+	 * If new bookings are given IDs by a SequentialIdGenerator, it is moved on past the highest ID restored
+	 * so they don't reuse the IDs of bookings made before the restart.
+	 * @param directory the journal directory
+	 * @param providers the providers to restore, matched by name
+	 * @param knownTypes the BikeTypes the system already has
+	 * @return what was restored
+	 * @throws IOException if the journal can't be read or has two bookings with the same ID
+	 */
+	public static Recovery recover(Path directory, Collection<BikeProvider> providers, Collection<BikeType> knownTypes) throws IOException {
+		long start = System.nanoTime();
+		Recovery recovery = new Recovery(providers, knownTypes);
+		if (!Files.isDirectory(directory)) return recovery;
+
+		long snapshotSeq = 0;
+		ArrayList<Long> snapshots = listFiles(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+		if (!snapshots.isEmpty()) {
+			snapshotSeq = snapshots.get(snapshots.size() - 1);
+			byte[] state = Files.readAllBytes(snapshotPath(directory, snapshotSeq));
+			recovery.loadSnapshot(new DataInputStream(new ByteArrayInputStream(state)));
+		}
+		recovery.snapshotSeq = snapshotSeq;
+		recovery.lastSeq = snapshotSeq;
+
+		ArrayList<Long> segments = listFiles(directory, SEGMENT_PREFIX, SEGMENT_SUFFIX);
+		for (int i=0; i<segments.size(); i++) {
+			// Segments whose events are all in the snapshot are skipped without being read
+			if (i + 1 < segments.size() && segments.get(i + 1) <= snapshotSeq + 1) continue;
+			for (Record r : readSegment(segmentPath(directory, segments.get(i)))) {
+				if (r.seq <= snapshotSeq) continue;
+				recovery.apply(r);
+				recovery.lastSeq = Math.max(recovery.lastSeq, r.seq);
+			}
+		}
+		BookingIdGenerator generator = BookedQuote.getIdGenerator();
+		if (generator instanceof SequentialIdGenerator && recovery.highestSequentialId >= 0) {
+			((SequentialIdGenerator) generator).advancePast(recovery.highestSequentialId);
+		}
+		recovery.nanos = System.nanoTime() - start;
+		return recovery;
+	}
+
+	private static class Record {
+		private final long seq;
+		private final byte type;
+		private final DataInputStream data;
+
+		private Record(long seq, byte type, DataInputStream data) {
+			this.seq = seq;
+			this.type = type;
+			this.data = data;
+		}
+	}
+
+	/**
+	 * Reads the valid records in a segment, stopping at the end or at the first torn record
+	 */
+	private static ArrayList<Record> readSegment(Path path) throws IOException {
+		ArrayList<Record> records = new ArrayList<Record>();
+		try (FileChannel c = FileChannel.open(path, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = c.map(FileChannel.MapMode.READ_ONLY, 0, c.size());
+			while (buffer.remaining() >= RECORD_HEADER_BYTES) {
+				int length = buffer.getInt();
+				int crc = buffer.getInt();
+				if (length <= 0 || length > buffer.remaining()) break;
+				byte[] body = new byte[length];
+				buffer.get(body);
+				CRC32 check = new CRC32();
+				check.update(body);
+				if ((int) check.getValue() != crc) break;
+				DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+				long seq = in.readLong();
+				byte type = in.readByte();
+				records.add(new Record(seq, type, in));
+			}
+		}
+		return records;
+	}
+
+	private static Path segmentPath(Path directory, long firstSeq) {
+		return directory.resolve(SEGMENT_PREFIX + String.format("%020d", firstSeq) + SEGMENT_SUFFIX);
+	}
+
+	private static Path snapshotPath(Path directory, long seq) {
+		return directory.resolve(SNAPSHOT_PREFIX + String.format("%020d", seq) + SNAPSHOT_SUFFIX);
+	}
+
+	/**
+	 * @return the sequence numbers in the names of the files with the prefix and suffix, in increasing order
+	 */
+	private static ArrayList<Long> listFiles(Path directory, String prefix, String suffix) throws IOException {
+		ArrayList<Long> numbers = new ArrayList<Long>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+			for (Path f : files) {
+				String name = f.getFileName().toString();
+				try {
+					numbers.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+				}
+				catch (NumberFormatException e) {
+					// Not one of ours
+				}
+			}
+		}
+		Collections.sort(numbers);
+		return numbers;
+	}
+
+	/**
+	 * The state rebuilt from a journal
+	 */
+	public static class Recovery {
+		private final HashMap<String, BikeProvider> providers = new HashMap<String, BikeProvider>();
+		private final HashMap<String, BikeType> types = new HashMap<String, BikeType>();
+		private final HashMap<String, Customer> customers = new HashMap<String, Customer>();
+		private final HashMap<String, BookedQuote> bookings = new HashMap<String, BookedQuote>();
+		private long snapshotSeq;
+		private long lastSeq;
+		private long eventsReplayed;
+		private long nanos;
+		private long highestSequentialId = -1;
+
+		private Recovery(Collection<BikeProvider> providers, Collection<BikeType> knownTypes) {
+			for (BikeProvider p : providers) {
+				this.providers.put(p.getName(), p);
+			}
+			for (BikeType t : knownTypes) {
+				types.put(t.getName(), t);
+			}
+		}
+
+		/**
+		 * @return the customers recreated from the bookings
+		 */
+		public Collection<Customer> getCustomers() {
+			return customers.values();
+		}
+
+		/**
+		 * @return the BikeTypes by name, including any that had to be created
+		 */
+		public Map<String, BikeType> getTypes() {
+			return types;
+		}
+
+		/**
+		 * @param bookingID the ID of a booking
+		 * @return the restored booking, or null if there isn't one
+		 */
+		public BookedQuote getBooking(String bookingID) {
+			return bookings.get(bookingID);
+		}
+
+		/**
+		 * @return the sequence number of the snapshot that was loaded, or 0 if there wasn't one
+		 */
+		public long getSnapshotSeq() {
+			return snapshotSeq;
+		}
+
+		/**
+		 * @return the sequence number of the last event restored
+		 */
+		public long getLastSeq() {
+			return lastSeq;
+		}
+
+		/**
+		 * @return the highest booking ID restored that a SequentialIdGenerator could have given out, or -1
+		 */
+		public long getHighestSequentialId() {
+			return highestSequentialId;
+		}
+
+		/**
+		 * @return the number of events replayed after the snapshot
+		 */
+		public long getEventsReplayed() {
+			return eventsReplayed;
+		}
+
+		/**
+		 * @return how long recovery took in nanoseconds
+		 */
+		public long getNanos() {
+			return nanos;
+		}
+
+		private void loadSnapshot(DataInputStream in) throws IOException {
+			if (in.readInt() != SNAPSHOT_MAGIC) throw new IOException("Not a journal snapshot");
+			in.readLong();
+			highestSequentialId = Math.max(highestSequentialId, in.readLong());
+			int providerCount = in.readInt();
+			for (int i=0; i<providerCount; i++) {
+				BikeProvider provider = providers.get(in.readUTF());
+
+				int typeCount = in.readInt();
+				for (int j=0; j<typeCount; j++) {
+					BikeType type = type(in.readUTF(), in.readUTF());
+					int bikeCount = in.readInt();
+					for (int k=0; k<bikeCount; k++) {
+						Bike bike = new Bike(type);
+						bike.restoreStatus(BikeStatus.fromLabel(in.readUTF()));
+						int ranges = in.readInt();
+						for (int r=0; r<ranges; r++) {
+							bike.addToDates(DateRange.ofEpochDays(in.readLong(), in.readLong()));
+						}
+						if (provider != null) provider.addBike(bike);
+					}
+				}
+
+				int priceCount = in.readInt();
+				for (int j=0; j<priceCount; j++) {
+					BikeType type = type(in.readUTF(), in.readUTF());
+					BigDecimal price = new BigDecimal(in.readUTF());
+					if (provider != null) provider.setDailyRentalPrice(type, price);
+				}
+
+				int bookingCount = in.readInt();
+				for (int j=0; j<bookingCount; j++) {
+					readBooking(in);
+				}
+			}
+		}
+
+		private void apply(Record r) throws IOException {
+			DataInputStream in = r.data;
+			eventsReplayed++;
+			switch (r.type) {
+			case BIKE_ADDED: {
+				BikeProvider provider = providers.get(in.readUTF());
+				BikeType type = type(in.readUTF(), in.readUTF());
+				in.readInt();
+				if (provider != null) provider.addBike(new Bike(type));
+				break;
+			}
+			case BIKE_REMOVED: {
+				BikeProvider provider = providers.get(in.readUTF());
+				Bike bike = bike(provider, in.readUTF(), in.readInt());
+				if (bike != null) provider.removeBike(bike);
+				break;
+			}
+			case BOOKED:
+				readBooking(in);
+				break;
+			case RETURNED: {
+				BookedQuote booking = bookings.get(in.readUTF());
+				if (booking != null && booking.getBookingStatus() != BookingStatus.RETURNED) {
+					booking.getProvider().returnBikes(booking);
+				}
+				break;
+			}
+			case PRICE_SET: {
+				BikeProvider provider = providers.get(in.readUTF());
+				BikeType type = type(in.readUTF(), in.readUTF());
+				BigDecimal price = new BigDecimal(in.readUTF());
+				if (provider != null) provider.setDailyRentalPrice(type, price);
+				break;
+			}
+			default:
+				throw new IOException("Unknown journal event type " + r.type);
+			}
+		}
+
+		/**
+		 * Restores a booking, the dates are only added to bikes that don't already have them
+		 * since a snapshot includes the dates of the bookings in it.
+		 * Every booking is only recorded once, so a second booking with the same ID means two bookings were
+		 * given the same ID and one of them would be lost
+		 */
+		private void readBooking(DataInputStream in) throws IOException {
+			String bookingID = in.readUTF();
+			highestSequentialId = Math.max(highestSequentialId, SequentialIdGenerator.parse(bookingID));
+			BikeProvider provider = providers.get(in.readUTF());
+			String partnerName = readNullable(in);
+			String firstname = readNullable(in);
+			String surname = readNullable(in);
+			String postcode = readNullable(in);
+			String address = readNullable(in);
+			DateRange dates = DateRange.ofEpochDays(in.readLong(), in.readLong());
+			BigDecimal price = new BigDecimal(in.readUTF());
+			BigDecimal deposit = new BigDecimal(in.readUTF());
+			BookingStatus status = BookingStatus.fromLabel(in.readUTF());
+			int bikeCount = in.readInt();
+			ArrayList<Bike> bikes = new ArrayList<Bike>(bikeCount);
+			for (int i=0; i<bikeCount; i++) {
+				Bike b = bike(provider, in.readUTF(), in.readInt());
+				if (b != null) bikes.add(b);
+			}
+			if (bookings.containsKey(bookingID)) throw new IOException("Two bookings have the ID " + bookingID);
+			if (provider == null) return;
+
+			for (Bike b : bikes) {
+				if (b.checkFree(dates)) b.addToDates(dates);
+			}
+			String customerKey = firstname + "\u0000" + surname + "\u0000" + postcode + "\u0000" + address;
+			Customer customer = customers.computeIfAbsent(customerKey, k -> new Customer(firstname, surname,
+					postcode == null ? null : new Location(postcode, address)));
+			BookedQuote booking = BookedQuote.restore(bookingID, new Quote(provider, dates, bikes, price, deposit),
+					customer, status, partnerName == null ? null : providers.get(partnerName));
+			customer.getBookings().add(booking);
+			provider.restoreBooking(booking);
+			bookings.put(bookingID, booking);
+		}
+
+		private BikeType type(String name, String replacementValue) {
+			return types.computeIfAbsent(name, n -> new BikeType(n, new BigDecimal(replacementValue)));
+		}
+
+		private Bike bike(BikeProvider provider, String typeName, int slot) {
+			if (provider == null) return null;
+			BikeType type = types.get(typeName);
+			AvailabilityCalendar calendar = type == null ? null : provider.getAvailability(type);
+			if (calendar == null || slot < 0 || slot >= calendar.getBikes().size()) return null;
+			return calendar.getBikes().get(slot);
+		}
+
+		private static String readNullable(DataInputStream in) throws IOException {
+			return in.readBoolean() ? in.readUTF() : null;
+		}
+	}
+}
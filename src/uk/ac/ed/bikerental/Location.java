@@ -1,9 +1,15 @@
 package uk.ac.ed.bikerental;
 
+import java.util.Objects;
+
 public class Location {
     private String postcode;
     private String address;
 
+    /** The postal area and district are worked out once here since they're compared on every search */
+    private String postalArea;
+    private String postcodeDistrict;
+
 
     /**
      * Constructor takes the initial postcode and address strings
@@ -14,6 +20,8 @@ public class Location {
         assert postcode.length() >= 6;
         this.postcode = postcode;
         this.address = address;
+        this.postalArea = getPostalArea(postcode);
+        this.postcodeDistrict = getPostcodeDistrict(postcode);
     }
 
     /**
@@ -23,7 +31,7 @@ public class Location {
      * @return a boolean indicating if the other Location is "near" to this Location
      */
     public boolean isNearTo(Location other) {
-        return getPostalArea(postcode).equals(getPostalArea(other.getPostcode()));
+        return postalArea.equals(other.postalArea);
     }
 
     /**
@@ -42,6 +50,41 @@ public class Location {
     public String getAddress() {
         return address;
     }
+
+    /**
+     * Getter for the postal area, two locations are near each other if these are equal
+     * @return the postal area
+     */
+    public String getPostalArea() {
+        return postalArea;
+    }
+
+    /**
+     * Getter for the postcode district (the outward code, eg "EH13" for "EH13 7EB")
+     * @return the postcode district
+     */
+    public String getPostcodeDistrict() {
+        return postcodeDistrict;
+    }
+
+
+    @Override
+    public int hashCode() {
+        // hashCode method allowing locations to be used to group deliveries
+        return Objects.hash(postcode, address);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        Location other = (Location) obj;
+        return Objects.equals(postcode, other.postcode) && Objects.equals(address, other.address);
+    }
     
     // You can add your own methods here
 
@@ -51,7 +94,18 @@ public class Location {
      * @return the first 2 characters of the postcode
      */
     private static String getPostalArea(String postcode){
-        return postcode.substring(0, 2);
+        return postcode.substring(0, 2).intern();
+    }
+
+    /**
+     * Takes in a postcode and returns the outward code, which is everything but the last 3 characters
+     * (the inward code) ignoring spaces
+     * @param postcode the postcode in question as a String
+     * @return the postcode district
+     */
+    private static String getPostcodeDistrict(String postcode){
+        String trimmed = postcode.replace(" ", "");
+        return trimmed.substring(0, Math.max(2, trimmed.length() - 3)).intern();
     }
 
 }
@@ -2,55 +2,310 @@ package uk.ac.ed.bikerental;
 
 import java.time.LocalDate;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Deque;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Objects;
 
+/**
+ * A stand-in for the real delivery service that can be used to simulate dispatching deliveries day by day.
+ * Pickups are kept in a ring of day buckets so finding and dispatching a day's pickups doesn't depend on
+ * how many other days have deliveries scheduled. A day too far from the others to fit in the ring is kept
+ * separately until it is dispatched.
+ * Within a day deliveries are grouped by route (pickup and dropoff location), and each route is picked up
+ * and dropped off as a whole.
+ * Counts of the pickups waiting and deliveries in transit and the time spent dispatching are recorded.
+ */
 public class MockDeliveryService implements DeliveryService {
-    Map<LocalDate, Collection<Deliverable>> pickups;
-    Deque<Deliverable> dropoffs;
-    
+
+    /** The number of days in the ring by default */
+    public static final int DEFAULT_RING_DAYS = 366;
+
+    private final DayBucket[] ring;
+
+    /** Days whose ring bucket was already in use by another day when they were scheduled */
+    private final HashMap<Long, DayBucket> overflow;
+
+    /** Routes that have been picked up and are waiting to be dropped off, in the order they were picked up */
+    private final ArrayDeque<Route> inTransit;
+
+    private long pendingPickups;
+    private long pendingDropoffs;
+    private long maxPendingPickups;
+    private long scheduled;
+    private long dispatches;
+    private long totalDispatchNanos;
+    private long maxDispatchNanos;
+
     public MockDeliveryService() {
-        this.pickups = new HashMap<LocalDate,
-                Collection<Deliverable>>();
-        this.dropoffs = new ArrayDeque<Deliverable>();
+        this(DEFAULT_RING_DAYS);
+    }
+
+    /**
+     * @param ringDays the number of days the ring holds, pickups more than this many days apart
+     *                 are still handled but more slowly
+     */
+    public MockDeliveryService(int ringDays) {
+        assert ringDays > 0;
+        this.ring = new DayBucket[ringDays];
+        this.overflow = new HashMap<Long, DayBucket>();
+        this.inTransit = new ArrayDeque<Route>();
     }
 
     @Override
-    public void scheduleDelivery(
+    public synchronized void scheduleDelivery(
             Deliverable deliverable,
             Location pickupLocation,
             Location dropoffLocation,
             LocalDate pickupDate) {
-        this.pickups.putIfAbsent(pickupDate,
-                new HashSet<Deliverable>());
-        this.pickups.get(pickupDate).add(deliverable);
-    }
-    
-    public Collection<Deliverable> getPickupsOn(LocalDate date) {
-        return this.pickups.get(date);
-    }
-    
-    public void carryOutPickups(LocalDate date) {
-        if (this.pickups.containsKey(date)) {
-            for (Deliverable d : this.pickups.get(date)) {
+        bucketFor(pickupDate.toEpochDay(), true)
+                .add(deliverable, pickupLocation, dropoffLocation);
+        recordScheduled();
+    }
+
+    @Override
+    public synchronized void scheduleDeliveries(
+            Collection<? extends Deliverable> deliverables,
+            Location pickupLocation,
+            Location dropoffLocation,
+            LocalDate pickupDate) {
+        DayBucket bucket = bucketFor(pickupDate.toEpochDay(), true);
+        for (Deliverable d : deliverables) {
+            bucket.add(d, pickupLocation, dropoffLocation);
+        }
+        recordScheduled();
+    }
+
+    /**
+     * @param date a day
+     * @return everything to be picked up on the day, or null if there's nothing
+     */
+    public synchronized Collection<Deliverable> getPickupsOn(LocalDate date) {
+        DayBucket bucket = bucketFor(date.toEpochDay(), false);
+        return bucket == null ? null : Collections.unmodifiableCollection(bucket.deliverables);
+    }
+
+    /**
+     * @param date a day
+     * @return the routes with pickups on the day, which is empty if there's nothing to pick up
+     */
+    public synchronized Collection<Route> getRoutesOn(LocalDate date) {
+        DayBucket bucket = bucketFor(date.toEpochDay(), false);
+        if (bucket == null) return Collections.emptyList();
+        return Collections.unmodifiableCollection(bucket.routes.values());
+    }
+
+    /**
+     * Picks up everything scheduled for the day, one route at a time
+     * @param date the day to carry out the pickups for
+     */
+    public synchronized void carryOutPickups(LocalDate date) {
+        long start = System.nanoTime();
+        long day = date.toEpochDay();
+        DayBucket bucket = bucketFor(day, false);
+        if (bucket == null) return;
+
+        for (Route r : bucket.routes.values()) {
+            for (Deliverable d : r.deliverables) {
                 d.onPickup();
-                dropoffs.add(d);
             }
-            this.pickups.remove(date);
+            inTransit.add(r);
+        }
+        int count = bucket.deliverables.size();
+        pendingPickups -= count;
+        pendingDropoffs += count;
+        removeBucket(day, bucket);
+        recordDispatch(start);
+    }
+
+    /**
+     * Drops off everything that has been picked up, one route at a time
+     */
+    public synchronized void carryOutDropoffs() {
+        long start = System.nanoTime();
+        while (!(this.inTransit.isEmpty())) {
+            Route r = this.inTransit.poll();
+            for (Deliverable d : r.deliverables) {
+                d.onDropoff();
+            }
+            pendingDropoffs -= r.deliverables.size();
+        }
+        recordDispatch(start);
+    }
+
+    /**
+     * @return everything that has been picked up but not dropped off yet
+     */
+    public synchronized Collection<Deliverable> getDropoffs() {
+        ArrayList<Deliverable> dropoffs = new ArrayList<Deliverable>();
+        for (Route r : inTransit) {
+            dropoffs.addAll(r.deliverables);
+        }
+        return dropoffs;
+    }
+
+    // Metrics
+
+    /**
+     * @return the number of deliverables waiting to be picked up
+     */
+    public synchronized long getPendingPickups() {
+        return pendingPickups;
+    }
+
+    /**
+     * @return the number of deliverables picked up but not dropped off
+     */
+    public synchronized long getPendingDropoffs() {
+        return pendingDropoffs;
+    }
+
+    /**
+     * @return the most deliverables that have been waiting to be picked up at once
+     */
+    public synchronized long getMaxPendingPickups() {
+        return maxPendingPickups;
+    }
+
+    /**
+     * @return the number of calls made to schedule deliveries
+     */
+    public synchronized long getScheduledCalls() {
+        return scheduled;
+    }
+
+    /**
+     * @return the number of times pickups or dropoffs have been carried out
+     */
+    public synchronized long getDispatches() {
+        return dispatches;
+    }
+
+    /**
+     * @return the average time taken to carry out pickups or dropoffs in nanoseconds
+     */
+    public synchronized long getMeanDispatchNanos() {
+        return dispatches == 0 ? 0 : totalDispatchNanos / dispatches;
+    }
+
+    /**
+     * @return the longest time taken to carry out pickups or dropoffs in nanoseconds
+     */
+    public synchronized long getMaxDispatchNanos() {
+        return maxDispatchNanos;
+    }
+
+    private void recordScheduled() {
+        scheduled++;
+        maxPendingPickups = Math.max(maxPendingPickups, pendingPickups);
+    }
+
+    private void recordDispatch(long start) {
+        long taken = System.nanoTime() - start;
+        dispatches++;
+        totalDispatchNanos += taken;
+        maxDispatchNanos = Math.max(maxDispatchNanos, taken);
+    }
+
+    /**
+     * Finds the bucket of a day, which is in the ring unless its slot was in use by another day
+     * @param day the epoch day
+     * @param create true to create the bucket if there isn't one
+     * @return the bucket, or null if there isn't one and create is false
+     */
+    private DayBucket bucketFor(long day, boolean create) {
+        int index = (int) Math.floorMod(day, (long) ring.length);
+        DayBucket bucket = ring[index];
+        if (bucket != null && bucket.day == day) return bucket;
+        // The day may have gone into overflow while its slot was in use, and stays there once the slot is freed
+        DayBucket spilled = overflow.isEmpty() ? null : overflow.get(day);
+        if (spilled != null || !create) return spilled;
+        if (bucket == null) {
+            bucket = new DayBucket(day);
+            ring[index] = bucket;
+            return bucket;
         }
+        spilled = new DayBucket(day);
+        overflow.put(day, spilled);
+        return spilled;
+    }
+
+    private void removeBucket(long day, DayBucket bucket) {
+        int index = (int) Math.floorMod(day, (long) ring.length);
+        if (ring[index] == bucket) ring[index] = null;
+        else overflow.remove(day);
     }
 
-    public void carryOutDropoffs() {
-        while (!(this.dropoffs.isEmpty())) {
-            Deliverable d = this.dropoffs.pop();
-            d.onDropoff();
+    /**
+     * The pickups for one day, grouped by route
+     */
+    private class DayBucket {
+        private final long day;
+        /** Everything to pick up on the day, a deliverable is only picked up once a day */
+        private final LinkedHashSet<Deliverable> deliverables = new LinkedHashSet<Deliverable>();
+        private final LinkedHashMap<Route, Route> routes = new LinkedHashMap<Route, Route>();
+
+        private DayBucket(long day) {
+            this.day = day;
+        }
+
+        private void add(Deliverable deliverable, Location pickupLocation, Location dropoffLocation) {
+            if (!deliverables.add(deliverable)) return;
+            Route key = new Route(pickupLocation, dropoffLocation);
+            Route route = routes.get(key);
+            if (route == null) {
+                routes.put(key, key);
+                route = key;
+            }
+            route.deliverables.add(deliverable);
+            pendingPickups++;
         }
     }
 
-    public Collection<Deliverable> getDropoffs() {
-        return this.dropoffs;
+    /**
+     * The deliverables going from one location to another on a day
+     */
+    public static class Route {
+        private final Location pickupLocation;
+        private final Location dropoffLocation;
+        private final ArrayList<Deliverable> deliverables = new ArrayList<Deliverable>();
+
+        private Route(Location pickupLocation, Location dropoffLocation) {
+            this.pickupLocation = pickupLocation;
+            this.dropoffLocation = dropoffLocation;
+        }
+
+        public Location getPickupLocation() {
+            return pickupLocation;
+        }
+
+        public Location getDropoffLocation() {
+            return dropoffLocation;
+        }
+
+        public Collection<Deliverable> getDeliverables() {
+            return Collections.unmodifiableList(deliverables);
+        }
+
+        // Routes are equal if they go between the same locations, whatever they're carrying
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(pickupLocation, dropoffLocation);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Route))
+                return false;
+            Route other = (Route) obj;
+            return Objects.equals(pickupLocation, other.pickupLocation)
+                    && Objects.equals(dropoffLocation, other.dropoffLocation);
+        }
     }
 }
@@ -0,0 +1,68 @@
+package uk.ac.ed.bikerental;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Helpers for doing money arithmetic in pence held in a long, so the pricing loops don't create a BigDecimal
+ * for every bike. Amounts are converted from BigDecimal once when a price is set and back once at the end
+ * of a calculation.
+ * The scale of the original BigDecimal is remembered so that the result can be given exactly the same
+ * scale as the BigDecimal arithmetic would have produced.
+ */
+public class Money {
+
+    /** The number of decimal places in a penny */
+    public static final int PENCE_SCALE = 2;
+
+    /** Returned by toPence when an amount can't be held exactly in pence */
+    public static final long NOT_PENCE = Long.MIN_VALUE;
+
+    public static final BigDecimal ONE = BigDecimal.ONE;
+    public static final BigDecimal HUNDRED = new BigDecimal(100);
+
+    /**
+     * @param amount an amount of money
+     * @return the amount in pence, or NOT_PENCE if it has fractions of a penny or doesn't fit in a long
+     */
+    public static long toPence(BigDecimal amount){
+        try {
+            long pence = amount.setScale(PENCE_SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+            return pence == NOT_PENCE ? NOT_PENCE : pence;
+        }
+        catch (ArithmeticException e) {
+            return NOT_PENCE;
+        }
+    }
+
+    /**
+     * @param pence an amount in pence
+     * @param scale the scale the result should have
+     * @return the amount as a BigDecimal with the given scale
+     */
+    public static BigDecimal fromPence(long pence, int scale){
+        return BigDecimal.valueOf(pence, PENCE_SCALE).setScale(scale, RoundingMode.UNNECESSARY);
+    }
+
+    /**
+     * A price converted to pence along with the scale it was given in
+     */
+    public static class PenceAmount {
+        public final BigDecimal amount;
+        public final long pence;
+        public final int scale;
+
+        public PenceAmount(BigDecimal amount){
+            this.amount = amount;
+            this.pence = toPence(amount);
+            this.scale = amount.scale();
+        }
+
+        /**
+         * @return true if the amount could be converted to pence exactly
+         */
+        public boolean isExact(){
+            return pence != NOT_PENCE;
+        }
+    }
+}
@@ -1,8 +1,41 @@
 package uk.ac.ed.bikerental;
 import java.math.BigDecimal;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 public interface PricingPolicy {
     public void setDailyRentalPrice(BikeType bikeType, BigDecimal dailyPrice);
-    public BigDecimal calculatePrice(Collection<Bike> bikes, DateRange duration);
+
+    /**
+     * @return the daily rental price of each BikeType with a price, used to save the prices
+     */
+    public default Map<BikeType, BigDecimal> getDailyRentalPrices() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Calculates the price of renting the given numbers of each BikeType for the dates.
+     * The price only depends on the types and how many of each there are, so this does work per type
+     * rather than per bike
+     * @param bikeCounts a map from each BikeType to the number of bikes of that type
+     * @param duration the dates to price
+     * @return the total price
+     */
+    public BigDecimal calculatePrice(Map<BikeType, Integer> bikeCounts, DateRange duration);
+
+    /**
+     * Calculates the price of renting the given bikes by counting the bikes of each type
+     * @param bikes the bikes to price
+     * @param duration the dates to price
+     * @return the total price
+     */
+    public default BigDecimal calculatePrice(Collection<Bike> bikes, DateRange duration) {
+        HashMap<BikeType, Integer> bikeCounts = new HashMap<BikeType, Integer>();
+        for (Bike b: bikes) {
+            bikeCounts.merge(b.getType(), 1, Integer::sum);
+        }
+        return calculatePrice(bikeCounts, duration);
+    }
 }
@@ -0,0 +1,107 @@
+package uk.ac.ed.bikerental;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Stores all the BikeProviders indexed by their postal area and postcode district,
+ * so that a search only has to look at the providers near to it rather than every provider
+ */
+public class ProviderRegistry {
+
+	private HashMap<String, ArrayList<BikeProvider>> byPostalArea;
+	private HashMap<String, ArrayList<BikeProvider>> byPostcodeDistrict;
+
+	/** The location each provider was indexed under, so it can be found again if the provider moves */
+	private IdentityHashMap<BikeProvider, Location> indexedLocations;
+
+
+	public ProviderRegistry(){
+		this.byPostalArea = new HashMap<String, ArrayList<BikeProvider>>();
+		this.byPostcodeDistrict = new HashMap<String, ArrayList<BikeProvider>>();
+		this.indexedLocations = new IdentityHashMap<BikeProvider, Location>();
+	}
+
+	/**
+	 * Constructor adding all of the given providers to the registry
+	 * @param providers the providers to add
+	 */
+	public ProviderRegistry(Collection<BikeProvider> providers){
+		this();
+		for (BikeProvider bp : providers) {
+			addProvider(bp);
+		}
+	}
+
+	/**
+	 * Adds a provider to the registry under its current location if it is not already present
+	 * @param provider the provider to add
+	 */
+	public void addProvider(BikeProvider provider){
+		if (indexedLocations.containsKey(provider)) return;
+		Location location = provider.getLocation();
+		indexedLocations.put(provider, location);
+		byPostalArea.computeIfAbsent(location.getPostalArea(), k -> new ArrayList<BikeProvider>()).add(provider);
+		byPostcodeDistrict.computeIfAbsent(location.getPostcodeDistrict(), k -> new ArrayList<BikeProvider>()).add(provider);
+	}
+
+	/**
+	 * Removes a provider from the registry if it is present
+	 * @param provider the provider to remove
+	 */
+	public void removeProvider(BikeProvider provider){
+		Location location = indexedLocations.remove(provider);
+		if (location == null) return;
+		removeFrom(byPostalArea, location.getPostalArea(), provider);
+		removeFrom(byPostcodeDistrict, location.getPostcodeDistrict(), provider);
+	}
+
+	/**
+	 * Indexes a provider again, this should be called after BikeProvider.setLocation
+	 * @param provider the provider that has moved
+	 */
+	public void updateLocation(BikeProvider provider){
+		if (indexedLocations.get(provider) == provider.getLocation()) return;
+		removeProvider(provider);
+		addProvider(provider);
+	}
+
+	/**
+	 * @param location the location to search near
+	 * @return the providers in the same postal area as the location
+	 */
+	public List<BikeProvider> getProvidersNear(Location location){
+		return lookup(byPostalArea, location.getPostalArea());
+	}
+
+	/**
+	 * @param location the location to search near
+	 * @return the providers in the same postcode district as the location
+	 */
+	public List<BikeProvider> getProvidersInDistrict(Location location){
+		return lookup(byPostcodeDistrict, location.getPostcodeDistrict());
+	}
+
+	/**
+	 * @return the number of providers in the registry
+	 */
+	public int size(){
+		return indexedLocations.size();
+	}
+
+	private static List<BikeProvider> lookup(HashMap<String, ArrayList<BikeProvider>> index, String key){
+		ArrayList<BikeProvider> found = index.get(key);
+		if (found == null) return Collections.emptyList();
+		return Collections.unmodifiableList(found);
+	}
+
+	private static void removeFrom(HashMap<String, ArrayList<BikeProvider>> index, String key, BikeProvider provider){
+		ArrayList<BikeProvider> found = index.get(key);
+		found.remove(provider);
+		if (found.isEmpty()) index.remove(key);
+	}
+}
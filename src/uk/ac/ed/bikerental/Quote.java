@@ -1,11 +1,19 @@
 package uk.ac.ed.bikerental;
 import java.math.BigDecimal;
 import java.util.Collection;
+import java.util.Comparator;
 
 /**
  * This class stores information about the quotes that the customer can fetch and choose to book
  */
 public class Quote {
+
+	/** Orders quotes from the cheapest to the most expensive */
+	public static final Comparator<Quote> BY_PRICE = Comparator.comparing(Quote::getPrice);
+
+	/** Orders quotes from the smallest deposit to the largest */
+	public static final Comparator<Quote> BY_DEPOSIT = Comparator.comparing(Quote::getDeposit);
+
 	private BikeProvider provider;
 	private DateRange dates;
 	private Collection<Bike> bikes;
@@ -0,0 +1,185 @@
+package uk.ac.ed.bikerental;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of the quotes generated by one BikeProvider, keyed by the bikes wanted and the dates.
+ * Each entry remembers the version of the availability calendar of every BikeType in the search when it was
+ * made, so it stops being used as soon as a bike of one of those types is booked, returned, added, removed or
+ * changes status. Entries are also dropped after a time to live, at the end of the day (as deposits are valued
+ * on the day) and when the provider's pricing or valuation policy is replaced.
+ * Least recently used entries are evicted once the cache is full.
+ */
+public class QuoteCache {
+
+	private final BikeProvider provider;
+	private final int maxEntries;
+	private final long ttlNanos;
+
+	private final LinkedHashMap<Key, Entry> entries;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+
+	/**
+	 * @param provider the provider whose quotes are cached
+	 * @param maxEntries the most quotes to keep
+	 * @param ttlMillis how long a quote can be reused for in milliseconds
+	 */
+	public QuoteCache(BikeProvider provider, int maxEntries, long ttlMillis) {
+		assert maxEntries > 0;
+		this.provider = provider;
+		this.maxEntries = maxEntries;
+		this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+		this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+				return size() > QuoteCache.this.maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Looks up a quote, checking that none of the stock it depends on has changed
+	 * @param bikesWanted a map of the BikeTypes wanted to the quantity wanted
+	 * @param dates the DateRange to quote for
+	 * @return the cached entry (whose quote may be null if the provider couldn't quote), or null on a miss
+	 */
+	public Entry get(Map<BikeType, Integer> bikesWanted, DateRange dates) {
+		Key key = new Key(bikesWanted, dates);
+		Entry entry;
+		synchronized (entries) {
+			entry = entries.get(key);
+			if (entry != null && !entry.isValid()) {
+				entries.remove(key);
+				entry = null;
+			}
+		}
+		if (entry == null) misses.incrementAndGet();
+		else hits.incrementAndGet();
+		return entry;
+	}
+
+	/**
+	 * Records the current versions of the stock a quote depends on.
+	 * This must be called before the quote is generated so that any change made while it is being generated
+	 * makes the entry stale
+	 * @param bikesWanted a map of the BikeTypes wanted to the quantity wanted
+	 * @param dates the DateRange to quote for
+	 * @return a new entry to pass to put once the quote has been generated
+	 */
+	public Entry prepare(Map<BikeType, Integer> bikesWanted, DateRange dates) {
+		return new Entry(new Key(new HashMap<BikeType, Integer>(bikesWanted), dates));
+	}
+
+	/**
+	 * Stores a generated quote
+	 * @param entry the entry returned by prepare
+	 * @param quote the generated quote, or null if the provider couldn't quote
+	 */
+	public void put(Entry entry, Quote quote) {
+		entry.quote = quote;
+		synchronized (entries) {
+			entries.put(entry.key, entry);
+		}
+	}
+
+	/**
+	 * Removes every entry, used when the pricing or valuation policy changes
+	 */
+	public void invalidateAll() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+
+	/**
+	 * A cached quote with the calendar versions it was generated from
+	 */
+	public class Entry {
+		private final Key key;
+		private final BikeType[] types;
+		private final AvailabilityCalendar[] calendars;
+		private final long[] versions;
+		private final long createdAt;
+		private final long day;
+		private Quote quote;
+
+		private Entry(Key key) {
+			this.key = key;
+			this.types = key.bikes.keySet().toArray(new BikeType[0]);
+			this.calendars = new AvailabilityCalendar[types.length];
+			this.versions = new long[types.length];
+			for (int i=0; i<types.length; i++) {
+				calendars[i] = provider.getAvailability(types[i]);
+				versions[i] = calendars[i] == null ? -1 : calendars[i].getVersion();
+			}
+			this.createdAt = System.nanoTime();
+			this.day = LocalDate.now().toEpochDay();
+		}
+
+		public Quote getQuote() {
+			return quote;
+		}
+
+		private boolean isValid() {
+			if (System.nanoTime() - createdAt > ttlNanos) return false;
+			if (LocalDate.now().toEpochDay() != day) return false;
+			for (int i=0; i<types.length; i++) {
+				AvailabilityCalendar current = provider.getAvailability(types[i]);
+				if (current != calendars[i]) return false;
+				if (current != null && current.getVersion() != versions[i]) return false;
+			}
+			return true;
+		}
+	}
+
+	private static class Key {
+		private final Map<BikeType, Integer> bikes;
+		private final DateRange dates;
+		private final int hash;
+
+		private Key(Map<BikeType, Integer> bikes, DateRange dates) {
+			this.bikes = bikes;
+			this.dates = dates;
+			this.hash = 31 * bikes.hashCode() + dates.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return hash == other.hash && Objects.equals(dates, other.dates) && Objects.equals(bikes, other.bikes);
+		}
+	}
+}
@@ -1,7 +1,26 @@
 package uk.ac.ed.bikerental;
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * This class handles searching for quotes from the bike providers, taking in the search criteria needed for this
@@ -12,6 +31,15 @@ public class Search {
 	private Map<BikeType, Integer> bikes;
 	public ArrayList<BikeProvider> providers;
 
+	/** If set the quotes are generated in parallel on this executor, otherwise one provider at a time */
+	private ExecutorService executor;
+
+	/** How long each provider has to generate its quote in parallel mode, 0 means no limit */
+	private long providerTimeoutMillis;
+
+	/** Quotes costing more than this are left out, null means no limit */
+	private BigDecimal maxBudget;
+
 	/**Constructor takes in the search critera passed in by the user
 	 *
 	 * @param location the location to search near
@@ -26,23 +54,324 @@ public class Search {
 		this.providers = providers;
 	}
 
+	/**Constructor taking the providers from a registry, only the providers near the location are looked at
+	 *
+	 * @param location the location to search near
+	 * @param dates the dates the bikes should be rented for
+	 * @param bikes a map of bike type to quantity desired
+	 * @param registry the registry of all BikeProviders
+	 */
+	public Search(Location location, DateRange dates, Map<BikeType, Integer> bikes, ProviderRegistry registry) {
+		this(location, dates, bikes, new ArrayList<BikeProvider>(registry.getProvidersNear(location)));
+	}
+
+	/**
+	 * Switches the search to the parallel quote engine, where every nearby provider generates its quote
+	 * as a separate task on the executor. Passing null switches back to generating quotes one at a time
+	 * @param executor the executor to run the quote generation on
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Sets how long a provider has to generate its quote in parallel mode before it is left out of the results.
+	 * The providers are all given the same deadline, measured from when getQuotes is called
+	 * @param millis the timeout in milliseconds, 0 for no timeout
+	 */
+	public void setProviderTimeout(long millis) {
+		assert millis >= 0;
+		this.providerTimeoutMillis = millis;
+	}
+
+	/**
+	 * Leaves out quotes that cost more than the budget. A provider's price for the bikes and dates is worked
+	 * out from its PricingPolicy before it looks for free bikes, and if that is over budget the provider
+	 * isn't asked for a quote at all
+	 * @param maxBudget the most a quote can cost, or null for no limit
+	 */
+	public void setMaxBudget(BigDecimal maxBudget) {
+		this.maxBudget = maxBudget;
+	}
+
+	/**
+	 * Creates an executor suitable for the parallel quote engine.
+	 * If the JVM supports virtual threads a virtual thread per task executor is returned (which should be
+	 * shut down by the caller), otherwise the common fork-join pool is used
+	 * @return an executor for quote generation
+	 */
+	public static ExecutorService defaultExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (ReflectiveOperationException e) {
+			return ForkJoinPool.commonPool();
+		}
+	}
+
 	/**
 	 * This will loop through the BikeProviders, check that they are near the location criterion and if so
 	 * generate a quote from said provider
+	 * If an executor has been set the quotes are generated in parallel, but they are still returned
+	 * in the same order as the providers
 	 *
 	 * @return  a collection of quotes generated by the bike providers
 	 */
 	public Collection<Quote> getQuotes(){
+		if (executor != null) return getQuotesInParallel();
 
 		ArrayList<Quote> quotes = new ArrayList<Quote>();
 		for (BikeProvider bp : providers) {
 			if (location.isNearTo(bp.getLocation())) {
-				Quote generatedQuote = bp.generateQuote(bikes, dates);
+				Quote generatedQuote = quoteFrom(bp, maxBudget);
 				if (generatedQuote != null) quotes.add(generatedQuote);
 			}
 		}
 		return quotes;
 	}
-	
-	
+
+	/**
+	 * Gets the quotes as a stream that gives each quote as soon as its provider has generated it, so the
+	 * first results can be shown before the slowest provider finishes.
+	 * In parallel mode the quotes come in the order the providers finish, and providers still working when
+	 * the timeout runs out or the stream is closed are cancelled. Otherwise each provider is only asked for
+	 * its quote when the stream needs the next one
+	 *
+	 * @return a stream of the quotes generated by the nearby bike providers
+	 */
+	public Stream<Quote> streamQuotes(){
+		if (executor != null) return streamQuotesInParallel();
+		return providers.stream()
+				.filter(bp -> location.isNearTo(bp.getLocation()))
+				.map(bp -> quoteFrom(bp, maxBudget))
+				.filter(Objects::nonNull);
+	}
+
+	/**
+	 * Finds the best k quotes, keeping only k of them at a time in a heap rather than collecting them all
+	 *
+	 * @param k the number of quotes wanted
+	 * @param order how to rank the quotes, such as Quote.BY_PRICE or Quote.BY_DEPOSIT
+	 * @return up to k quotes, best first
+	 */
+	public ArrayList<Quote> getTopQuotes(int k, Comparator<Quote> order){
+		assert k > 0;
+		// The heap's head is the worst of the quotes kept so far
+		PriorityQueue<Quote> best = new PriorityQueue<Quote>(k + 1, order.reversed());
+		try (Stream<Quote> quotes = streamQuotes()) {
+			quotes.forEach(q -> keep(best, q, k, order));
+		}
+		return rank(best, order);
+	}
+
+	/**
+	 * Finds the k cheapest quotes. Without an executor, once k quotes have been found any provider whose
+	 * price would be higher than the worst of them isn't asked to look for free bikes
+	 *
+	 * @param k the number of quotes wanted
+	 * @return up to k quotes, cheapest first
+	 */
+	public ArrayList<Quote> getCheapestQuotes(int k){
+		if (executor != null) return getTopQuotes(k, Quote.BY_PRICE);
+		assert k > 0;
+		PriorityQueue<Quote> best = new PriorityQueue<Quote>(k + 1, Quote.BY_PRICE.reversed());
+		for (BikeProvider bp : providers) {
+			if (!location.isNearTo(bp.getLocation())) continue;
+			BigDecimal budget = maxBudget;
+			if (best.size() == k) {
+				// Quotes costing more than the worst kept can't replace it, ones costing the same are
+				// generated but not kept
+				BigDecimal worst = best.peek().getPrice();
+				if (budget == null || worst.compareTo(budget) < 0) budget = worst;
+			}
+			Quote q = quoteFrom(bp, budget);
+			if (q != null) keep(best, q, k, Quote.BY_PRICE);
+		}
+		return rank(best, Quote.BY_PRICE);
+	}
+
+	/**
+	 * Copies the kept quotes into a list, best first
+	 */
+	private static ArrayList<Quote> rank(PriorityQueue<Quote> best, Comparator<Quote> order){
+		ArrayList<Quote> ranked = new ArrayList<Quote>(best);
+		ranked.sort(order);
+		return ranked;
+	}
+
+	/**
+	 * Adds the quote to the heap if it is one of the best k so far, a quote as good as the worst kept
+	 * doesn't replace it
+	 */
+	private static void keep(PriorityQueue<Quote> best, Quote q, int k, Comparator<Quote> order){
+		if (best.size() < k) best.add(q);
+		else if (order.compare(q, best.peek()) < 0) {
+			best.poll();
+			best.add(q);
+		}
+	}
+
+	/**
+	 * Generates a provider's quote if it fits in the budget, pricing the bikes before looking for any
+	 * @param bp the provider to ask
+	 * @param budget the most the quote can cost, or null for no limit
+	 * @return the quote, or null if the provider can't quote or the quote is over budget
+	 */
+	private Quote quoteFrom(BikeProvider bp, BigDecimal budget){
+		if (budget != null) {
+			PricingPolicy pricing = bp.getPricing();
+			// Only priced up front when every type has a price, otherwise the policy would complain about it
+			if (pricing.getDailyRentalPrices().keySet().containsAll(bikes.keySet())
+					&& pricing.calculatePrice(bikes, dates).compareTo(budget) > 0) return null;
+		}
+		Quote generatedQuote = bp.generateQuote(bikes, dates);
+		// A cached quote could have been priced before a price change, so it is checked again
+		if (generatedQuote != null && budget != null && generatedQuote.getPrice().compareTo(budget) > 0) return null;
+		return generatedQuote;
+	}
+
+	/**
+	 * Finds the dates closest to the ones searched for that each nearby provider could rent out the bikes
+	 * for the same length of time, for when getQuotes finds nothing. Each provider works out its
+	 * alternatives in one pass over its bookings instead of the search being run again for every date
+	 *
+	 * @param maxWindows the most alternatives to find at each provider
+	 * @param searchDays how many days either side of the start searched for to look
+	 * @return the alternative dates of each nearby provider that has any, in provider order
+	 */
+	public LinkedHashMap<BikeProvider, ArrayList<DateRange>> getAlternativeDates(int maxWindows, int searchDays){
+		LinkedHashMap<BikeProvider, ArrayList<DateRange>> alternatives = new LinkedHashMap<BikeProvider, ArrayList<DateRange>>();
+		for (BikeProvider bp : providers) {
+			if (location.isNearTo(bp.getLocation())) {
+				ArrayList<DateRange> windows = bp.findAlternativeDates(bikes, dates, maxWindows, searchDays);
+				if (!windows.isEmpty()) alternatives.put(bp, windows);
+			}
+		}
+		return alternatives;
+	}
+
+	/**
+	 * Submits a quote generation task for every nearby provider and then collects the results in provider order.
+	 * Providers that don't finish before the deadline are cancelled and left out
+	 *
+	 * @return the quotes generated in time
+	 */
+	private Collection<Quote> getQuotesInParallel(){
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(providerTimeoutMillis);
+
+		ArrayList<Future<Quote>> tasks = new ArrayList<Future<Quote>>();
+		for (BikeProvider bp : providers) {
+			if (location.isNearTo(bp.getLocation())) {
+				tasks.add(executor.submit(() -> quoteFrom(bp, maxBudget)));
+			}
+		}
+
+		ArrayList<Quote> quotes = new ArrayList<Quote>();
+		for (int i=0; i<tasks.size(); i++) {
+			Future<Quote> task = tasks.get(i);
+			try {
+				Quote generatedQuote;
+				if (providerTimeoutMillis == 0) generatedQuote = task.get();
+				else generatedQuote = task.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+				if (generatedQuote != null) quotes.add(generatedQuote);
+			}
+			catch (TimeoutException e) {
+				task.cancel(true);
+			}
+			catch (ExecutionException e) {
+				cancelAll(tasks);
+				throw rethrow(e);
+			}
+			catch (InterruptedException e) {
+				cancelAll(tasks);
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		return quotes;
+	}
+
+	/**
+	 * Submits a quote generation task for every nearby provider and streams the quotes in the order they
+	 * are finished, using a completion service so the stream never waits on a slow provider while a
+	 * faster one is done
+	 *
+	 * @return a stream of the quotes generated in time
+	 */
+	private Stream<Quote> streamQuotesInParallel(){
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(providerTimeoutMillis);
+
+		ExecutorCompletionService<Quote> completions = new ExecutorCompletionService<Quote>(executor);
+		ArrayList<Future<Quote>> tasks = new ArrayList<Future<Quote>>();
+		for (BikeProvider bp : providers) {
+			if (location.isNearTo(bp.getLocation())) {
+				tasks.add(completions.submit(() -> quoteFrom(bp, maxBudget)));
+			}
+		}
+
+		Iterator<Quote> quotes = new Iterator<Quote>() {
+			private int remaining = tasks.size();
+			private Quote next;
+
+			@Override
+			public boolean hasNext() {
+				while (next == null && remaining > 0) {
+					Future<Quote> done;
+					try {
+						if (providerTimeoutMillis == 0) done = completions.take();
+						else done = completions.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						done = null;
+					}
+					// Out of time, so the providers still working are left out
+					if (done == null) {
+						cancelAll(tasks);
+						remaining = 0;
+						break;
+					}
+					remaining--;
+					try {
+						next = done.get();
+					}
+					catch (ExecutionException e) {
+						cancelAll(tasks);
+						throw rethrow(e);
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				return next != null;
+			}
+
+			@Override
+			public Quote next() {
+				if (!hasNext()) throw new NoSuchElementException();
+				Quote q = next;
+				next = null;
+				return q;
+			}
+		};
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(quotes, Spliterator.NONNULL), false)
+				.onClose(() -> cancelAll(tasks));
+	}
+
+	/**
+	 * @return the exception a quote generation task failed with, to be thrown in the searching thread
+	 */
+	private static RuntimeException rethrow(ExecutionException e){
+		if (e.getCause() instanceof RuntimeException) return (RuntimeException) e.getCause();
+		if (e.getCause() instanceof Error) throw (Error) e.getCause();
+		return new IllegalStateException(e.getCause());
+	}
+
+	private static void cancelAll(Collection<Future<Quote>> tasks){
+		for (Future<Quote> task : tasks) {
+			task.cancel(true);
+		}
+	}
+
+
 }
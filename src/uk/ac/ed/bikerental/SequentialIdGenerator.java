@@ -0,0 +1,56 @@
+package uk.ac.ed.bikerental;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gives out booking IDs 0, 1, 2, ... from an atomic counter, so IDs are unique and increasing without any
+ * locking. The counter starts again when the system restarts, so this is only suitable for a single node
+ * whose bookings don't outlive it (or that is given the next ID to use when it starts)
+ */
+public class SequentialIdGenerator implements BookingIdGenerator {
+
+	private final AtomicLong next;
+
+	public SequentialIdGenerator(){
+		this(0);
+	}
+
+	/**
+	 * @param first the first ID to give out
+	 */
+	public SequentialIdGenerator(long first){
+		this.next = new AtomicLong(first);
+	}
+
+	@Override
+	public String nextId(){
+		return String.valueOf(next.getAndIncrement());
+	}
+
+	/**
+	 * @return the last ID given out, or one less than the first ID if none have been
+	 */
+	public long getLastId(){
+		return next.get() - 1;
+	}
+
+	/**
+	 * Makes sure the IDs given out from now on are all greater than the ID, eg one restored from a journal
+	 * @param id an ID given out before
+	 */
+	public void advancePast(long id){
+		next.accumulateAndGet(id + 1, Math::max);
+	}
+
+	/**
+	 * @param id a booking ID
+	 * @return the ID as a number if it is one this generator could have given out, otherwise -1
+	 */
+	static long parse(String id){
+		if (id == null || id.isEmpty() || id.length() > 18) return -1;
+		for (int i=0; i<id.length(); i++){
+			if (id.charAt(i) < '0' || id.charAt(i) > '9') return -1;
+		}
+		return Long.parseLong(id);
+	}
+}
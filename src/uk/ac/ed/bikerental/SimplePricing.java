@@ -1,6 +1,6 @@
 package uk.ac.ed.bikerental;
 import java.math.BigDecimal;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -11,37 +11,77 @@ public class SimplePricing implements PricingPolicy {
 
     private Map<BikeType, BigDecimal> rates;
 
+    /** The rates converted to pence indexed by BikeType ID, kept in step with rates */
+    private volatile Money.PenceAmount[] ratesInPence;
+
     public SimplePricing() {
         this.rates = new HashMap<BikeType, BigDecimal>();
+        this.ratesInPence = new Money.PenceAmount[0];
     }
 
 
     @Override
     public void setDailyRentalPrice(BikeType bikeType, BigDecimal dailyPrice) {
         rates.put(bikeType, dailyPrice);
+        ratesInPence = BikeTypeRegistry.withEntry(ratesInPence, bikeType.getId(), new Money.PenceAmount(dailyPrice));
     }
 
     /**
-     * Calculates the price of a quote by multiplying the daily price of each bike by the
-     * number of days rented for and summing these
-     * @param bikes a collection of the bikes to quote
+     * Calculates the price of a quote by multiplying the daily price of each bike type by the number of
+     * bikes of that type and the number of days rented for and summing these
+     * The sum is done in pence and only converted back to a BigDecimal at the end, unless a rate has
+     * fractions of a penny or the total is too big for a long
+     * @param bikeCounts a map from each BikeType to the number of bikes of that type
      * @param duration the dates to quote for
      * @return the final price
      */
     @Override
-    public BigDecimal calculatePrice(Collection<Bike> bikes, DateRange duration) {
-        BigDecimal total = new BigDecimal(0);
-        for (Bike b: bikes){
-            if (rates.containsKey(b.getType())){
-                total = total.add(rates.get(b.getType()));
+    public BigDecimal calculatePrice(Map<BikeType, Integer> bikeCounts, DateRange duration) {
+        long totalPence = 0;
+        // The scale the BigDecimal sum would have, which is the largest scale of the rates added
+        int scale = 0;
+        Money.PenceAmount[] table = ratesInPence;
+        try {
+            for (Map.Entry<BikeType, Integer> e: bikeCounts.entrySet()){
+                int count = e.getValue();
+                if (count <= 0) continue;
+                Money.PenceAmount rate = BikeTypeRegistry.lookup(table, e.getKey());
+                if (rate != null){
+                    if (!rate.isExact()) return calculatePriceExactly(bikeCounts, duration);
+                    totalPence = Math.addExact(totalPence, Math.multiplyExact(rate.pence, count));
+                    scale = Math.max(scale, rate.scale);
+                }
+                else System.out.println("Bike type is not in the rates");
             }
-            else System.out.println("Bike type is not in the rates");
+            return Money.fromPence(Math.multiplyExact(totalPence, duration.toDays()), scale);
+        }
+        catch (ArithmeticException e) {
+            return calculatePriceExactly(bikeCounts, duration);
+        }
+    }
+
+    /**
+     * Calculates the price with BigDecimal arithmetic for rates that can't be held in pence
+     */
+    private BigDecimal calculatePriceExactly(Map<BikeType, Integer> bikeCounts, DateRange duration) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (Map.Entry<BikeType, Integer> e: bikeCounts.entrySet()){
+            BigDecimal rate = rates.get(e.getKey());
+            if (rate != null && e.getValue() > 0) total = total.add(rate.multiply(BigDecimal.valueOf(e.getValue())));
         }
-        return total.multiply(new BigDecimal(duration.toDays()));
+        return total.multiply(BigDecimal.valueOf(duration.toDays()));
     }
 
 
+    @Override
+    public Map<BikeType, BigDecimal> getDailyRentalPrices() {
+        return getRates();
+    }
+
+    /**
+     * @return the rates of each BikeType, these should be changed with setDailyRentalPrice
+     */
     public Map<BikeType, BigDecimal> getRates() {
-        return rates;
+        return Collections.unmodifiableMap(rates);
     }
 }
@@ -0,0 +1,80 @@
+package uk.ac.ed.bikerental;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gives out booking IDs made from the time, the ID of the booking node and a sequence number, in the style
+ * of Snowflake IDs. IDs stay unique across restarts (as long as the clock doesn't go back) and across
+ * nodes (as long as every node has a different node ID).
+ * The 64 bit ID is 41 bits of milliseconds since 2020, 10 bits of node ID and 12 bits of sequence, and is
+ * written as 13 characters of Crockford base 32 so the IDs sort in the order they were made, like ULIDs.
+ * If a node makes more than 4096 IDs in a millisecond it borrows from the next millisecond rather than
+ * waiting, so nextId never blocks.
+ */
+public class TimeOrderedIdGenerator implements BookingIdGenerator {
+
+	/** 2020-01-01T00:00:00Z in milliseconds since the Unix epoch */
+	public static final long EPOCH_MILLIS = 1577836800000L;
+
+	public static final int NODE_BITS = 10;
+	public static final int SEQUENCE_BITS = 12;
+	public static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+
+	private static final char[] CROCKFORD = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+	private static final int ID_CHARACTERS = 13;
+
+	private final long nodeId;
+
+	/** The time and sequence of the last ID given out, as (millis << SEQUENCE_BITS) | sequence */
+	private final AtomicLong last;
+
+
+	/**
+	 * @param nodeId the ID of this booking node, between 0 and MAX_NODE_ID
+	 */
+	public TimeOrderedIdGenerator(int nodeId){
+		assert nodeId >= 0 && nodeId <= MAX_NODE_ID;
+		this.nodeId = nodeId;
+		this.last = new AtomicLong();
+	}
+
+	public int getNodeId(){
+		return (int) nodeId;
+	}
+
+	@Override
+	public String nextId(){
+		return encode(nextLong());
+	}
+
+	/**
+	 * @return the next ID as a number, these increase for each ID given out by this generator
+	 */
+	public long nextLong(){
+		long now = (System.currentTimeMillis() - EPOCH_MILLIS) << SEQUENCE_BITS;
+		long prev, next;
+		do {
+			prev = last.get();
+			// If the clock hasn't moved on (or has gone back) the sequence is increased, which moves
+			// on to the next millisecond once the sequence runs out
+			next = now > prev ? now : prev + 1;
+		} while (!last.compareAndSet(prev, next));
+
+		long millis = next >>> SEQUENCE_BITS;
+		long sequence = next & ((1L << SEQUENCE_BITS) - 1);
+		return (millis << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | sequence;
+	}
+
+	/**
+	 * @param id an ID given out by nextLong
+	 * @return the ID written in 13 characters of Crockford base 32
+	 */
+	public static String encode(long id){
+		char[] chars = new char[ID_CHARACTERS];
+		for (int i=ID_CHARACTERS - 1; i>=0; i--){
+			chars[i] = CROCKFORD[(int) (id & 31)];
+			id >>>= 5;
+		}
+		return new String(chars);
+	}
+}
@@ -0,0 +1,354 @@
+package uk.ac.ed.bikerental;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds synthetic deployments of providers, bikes and bookings for benchmarks and load tests,
+ * and streams of customer operations to replay against them.
+ * Everything is generated from a seeded Random and a fixed base date, so the same seed always gives the same
+ * deployment and operations.
+ */
+public class WorkloadGenerator {
+
+	private static final String[] POSTAL_AREAS = {"AB", "DD", "DG", "EH", "FK", "G1", "HS", "IV", "KA", "KW",
+			"KY", "ML", "PA", "PH", "TD", "ZE", "BT", "CA", "NE", "YO"};
+
+	private final long seed;
+	private final LocalDate baseDate;
+
+	private int providerCount = 100;
+	private int postalAreaCount = POSTAL_AREAS.length;
+	private int bikesPerProvider = 50;
+	private int bikeTypeCount = 5;
+	private int partnersPerProvider = 2;
+	private int bookingsPerBike = 10;
+	private double discountedPricingShare = 0.5;
+
+
+	/**
+	 * Constructor for a generator whose dates are relative to today
+	 * @param seed the seed for all random choices
+	 */
+	public WorkloadGenerator(long seed){
+		this(seed, LocalDate.now());
+	}
+
+	/**
+	 * @param seed the seed for all random choices
+	 * @param baseDate the date the generated bookings and operations are centred around
+	 */
+	public WorkloadGenerator(long seed, LocalDate baseDate){
+		this.seed = seed;
+		this.baseDate = baseDate;
+	}
+
+	// Setters for the shape of the deployment, these return the generator so they can be chained
+
+	public WorkloadGenerator setProviderCount(int providerCount) {
+		this.providerCount = providerCount;
+		return this;
+	}
+
+	public WorkloadGenerator setPostalAreaCount(int postalAreaCount) {
+		assert postalAreaCount > 0 && postalAreaCount <= POSTAL_AREAS.length;
+		this.postalAreaCount = postalAreaCount;
+		return this;
+	}
+
+	public WorkloadGenerator setBikesPerProvider(int bikesPerProvider) {
+		this.bikesPerProvider = bikesPerProvider;
+		return this;
+	}
+
+	public WorkloadGenerator setBikeTypeCount(int bikeTypeCount) {
+		assert bikeTypeCount > 0;
+		this.bikeTypeCount = bikeTypeCount;
+		return this;
+	}
+
+	public WorkloadGenerator setPartnersPerProvider(int partnersPerProvider) {
+		this.partnersPerProvider = partnersPerProvider;
+		return this;
+	}
+
+	public WorkloadGenerator setBookingsPerBike(int bookingsPerBike) {
+		this.bookingsPerBike = bookingsPerBike;
+		return this;
+	}
+
+	public WorkloadGenerator setDiscountedPricingShare(double discountedPricingShare) {
+		this.discountedPricingShare = discountedPricingShare;
+		return this;
+	}
+
+	public LocalDate getBaseDate() {
+		return baseDate;
+	}
+
+	/**
+	 * Generates a deployment.
+	 * Providers are spread evenly over the postal areas and each partners with providers in the same area.
+	 * Every bike gets bookingsPerBike back to back bookings with random lengths and gaps, starting
+	 * before the base date so that roughly half of them are in the past
+	 * @param deliveryService the delivery service all the providers use
+	 * @return the new deployment
+	 */
+	public Deployment generate(DeliveryService deliveryService){
+		Random random = new Random(seed);
+		Deployment deployment = new Deployment();
+
+		for (int i=0; i<bikeTypeCount; i++){
+			deployment.bikeTypes.add(new BikeType("Type " + i, new BigDecimal(200 + random.nextInt(1800))));
+		}
+
+		for (int i=0; i<providerCount; i++){
+			String area = POSTAL_AREAS[i % postalAreaCount];
+			Location location = new Location(randomPostcode(random, area), i + " Generated St.");
+			PricingPolicy pricing = random.nextDouble() < discountedPricingShare
+					? randomDiscountedPricing(random, deployment.bikeTypes)
+					: randomSimplePricing(random, deployment.bikeTypes);
+			BikeProvider provider = new BikeProvider("Provider " + i, location, pricing,
+					new SimpleValuation(), deliveryService);
+
+			for (int j=0; j<bikesPerProvider; j++){
+				Bike bike = new Bike(deployment.bikeTypes.get(random.nextInt(bikeTypeCount)));
+				addBookings(random, bike);
+				provider.addBike(bike);
+			}
+			deployment.providers.add(provider);
+			deployment.registry.addProvider(provider);
+		}
+
+		// Partners are chosen from the providers in the same area, which are every postalAreaCount providers
+		for (int i=0; i<providerCount; i++){
+			int inArea = (providerCount - 1 - i % postalAreaCount) / postalAreaCount + 1;
+			for (int j=0; j<partnersPerProvider && inArea > 1; j++){
+				int partner = i % postalAreaCount + postalAreaCount * random.nextInt(inArea);
+				if (partner != i) deployment.providers.get(i).addPartner(deployment.providers.get(partner));
+			}
+		}
+
+		for (int i=0; i<Math.max(1, providerCount); i++){
+			String area = POSTAL_AREAS[i % postalAreaCount];
+			deployment.customers.add(new Customer("Customer", String.valueOf(i),
+					new Location(randomPostcode(random, area), i + " Customer Rd.")));
+		}
+		return deployment;
+	}
+
+	/**
+	 * Generates a stream of customer operations to replay against a deployment.
+	 * Each operation is a search, a search followed by booking the first quote, or the return of one of the
+	 * bookings made earlier in the stream
+	 * @param deployment the deployment the operations are for
+	 * @param count the number of operations
+	 * @param searchShare the fraction of operations that are just searches
+	 * @param returnShare the fraction of operations that are returns
+	 * @return the operations in the order they should be replayed
+	 */
+	public List<Operation> operations(Deployment deployment, int count, double searchShare, double returnShare){
+		Random random = new Random(seed ^ 0x5DEECE66DL);
+		ArrayList<Operation> operations = new ArrayList<Operation>(count);
+		for (int i=0; i<count; i++){
+			double kind = random.nextDouble();
+			Customer customer = deployment.customers.get(random.nextInt(deployment.customers.size()));
+			if (kind < returnShare){
+				operations.add(new Operation(OperationKind.RETURN, customer, null, null, random.nextInt(Integer.MAX_VALUE)));
+				continue;
+			}
+
+			HashMap<BikeType, Integer> bikes = new HashMap<BikeType, Integer>();
+			int types = 1 + random.nextInt(Math.min(2, deployment.bikeTypes.size()));
+			for (int j=0; j<types; j++){
+				bikes.merge(deployment.bikeTypes.get(random.nextInt(deployment.bikeTypes.size())), 1 + random.nextInt(3), Integer::sum);
+			}
+			LocalDate start = baseDate.plusDays(random.nextInt(60));
+			DateRange dates = new DateRange(start, start.plusDays(1 + random.nextInt(10)));
+			OperationKind operationKind = kind < returnShare + searchShare ? OperationKind.SEARCH : OperationKind.BOOK;
+			operations.add(new Operation(operationKind, customer, bikes, dates, 0));
+		}
+		return operations;
+	}
+
+	/**
+	 * Replays operations against a deployment in order
+	 * @param deployment the deployment to run the operations against
+	 * @param operations the operations to replay
+	 * @return counts of what happened
+	 */
+	public static ReplayResult replay(Deployment deployment, List<Operation> operations){
+		ReplayResult result = new ReplayResult();
+		ArrayList<BookedQuote> outstanding = new ArrayList<BookedQuote>();
+
+		for (Operation op : operations){
+			if (op.kind == OperationKind.RETURN){
+				if (outstanding.isEmpty()) continue;
+				// Swap the chosen booking to the end so it can be removed cheaply
+				int index = op.choice % outstanding.size();
+				BookedQuote booking = outstanding.get(index);
+				outstanding.set(index, outstanding.get(outstanding.size() - 1));
+				outstanding.remove(outstanding.size() - 1);
+				booking.getProvider().returnOrder(booking.getCustomer(), booking.getBookingID());
+				result.returns++;
+				continue;
+			}
+
+			ArrayList<Quote> quotes = op.customer.searchQuotes(op.customer.getAddress(), op.bikes, op.dates, deployment.registry);
+			result.searches++;
+			result.quotes += quotes.size();
+			if (op.kind != OperationKind.BOOK || quotes.isEmpty()) continue;
+
+			int before = op.customer.getBookings().size();
+			try {
+				op.customer.makeBooking(quotes.get(0), null, true);
+			}
+			catch (IllegalStateException e) {
+				result.failedBookings++;
+				continue;
+			}
+			if (op.customer.getBookings().size() > before){
+				outstanding.add(op.customer.getBookings().get(before));
+				result.bookings++;
+			}
+		}
+		return result;
+	}
+
+	private void addBookings(Random random, Bike bike){
+		LocalDate start = baseDate.minusDays(random.nextInt(7) + 4L * bookingsPerBike);
+		for (int i=0; i<bookingsPerBike; i++){
+			LocalDate end = start.plusDays(random.nextInt(7));
+			bike.addToDates(new DateRange(start, end));
+			start = end.plusDays(1 + random.nextInt(7));
+		}
+	}
+
+	private static String randomPostcode(Random random, String area){
+		return area + (1 + random.nextInt(20)) + " " + random.nextInt(10)
+				+ (char) ('A' + random.nextInt(26)) + (char) ('A' + random.nextInt(26));
+	}
+
+	private static SimplePricing randomSimplePricing(Random random, List<BikeType> types){
+		SimplePricing pricing = new SimplePricing();
+		for (BikeType type : types){
+			pricing.setDailyRentalPrice(type, randomDailyPrice(random));
+		}
+		return pricing;
+	}
+
+	private static DiscountedPricing randomDiscountedPricing(Random random, List<BikeType> types){
+		DiscountedPricing pricing = new DiscountedPricing();
+		for (BikeType type : types){
+			pricing.addBikeTypeToPrices(type, randomDailyPrice(random));
+		}
+		pricing.addDiscount(new DurationDiscount(14, -1, new BigDecimal(10 + random.nextInt(11))));
+		pricing.addDiscount(new DurationDiscount(7, 13, new BigDecimal(5 + random.nextInt(6))));
+		pricing.addDiscount(new DurationDiscount(3, 6, new BigDecimal(random.nextInt(6))));
+		return pricing;
+	}
+
+	private static BigDecimal randomDailyPrice(Random random){
+		// Prices between 5.00 and 60.00 in steps of 50p
+		return BigDecimal.valueOf(500 + 50L * random.nextInt(111), 2);
+	}
+
+
+	/**
+	 * A generated set of providers, bike types and customers
+	 */
+	public static class Deployment {
+		private final ArrayList<BikeType> bikeTypes = new ArrayList<BikeType>();
+		private final ArrayList<BikeProvider> providers = new ArrayList<BikeProvider>();
+		private final ArrayList<Customer> customers = new ArrayList<Customer>();
+		private final ProviderRegistry registry = new ProviderRegistry();
+
+		public ArrayList<BikeType> getBikeTypes() {
+			return bikeTypes;
+		}
+
+		public ArrayList<BikeProvider> getProviders() {
+			return providers;
+		}
+
+		public ArrayList<Customer> getCustomers() {
+			return customers;
+		}
+
+		public ProviderRegistry getRegistry() {
+			return registry;
+		}
+	}
+
+	public enum OperationKind { SEARCH, BOOK, RETURN }
+
+	/**
+	 * A single customer operation. Returns pick one of the outstanding bookings using choice
+	 */
+	public static class Operation {
+		private final OperationKind kind;
+		private final Customer customer;
+		private final HashMap<BikeType, Integer> bikes;
+		private final DateRange dates;
+		private final int choice;
+
+		Operation(OperationKind kind, Customer customer, HashMap<BikeType, Integer> bikes, DateRange dates, int choice) {
+			this.kind = kind;
+			this.customer = customer;
+			this.bikes = bikes;
+			this.dates = dates;
+			this.choice = choice;
+		}
+
+		public OperationKind getKind() {
+			return kind;
+		}
+
+		public Customer getCustomer() {
+			return customer;
+		}
+
+		public HashMap<BikeType, Integer> getBikes() {
+			return bikes;
+		}
+
+		public DateRange getDates() {
+			return dates;
+		}
+	}
+
+	/**
+	 * Counts of what happened during a replay
+	 */
+	public static class ReplayResult {
+		private long searches;
+		private long quotes;
+		private long bookings;
+		private long failedBookings;
+		private long returns;
+
+		public long getSearches() {
+			return searches;
+		}
+
+		public long getQuotes() {
+			return quotes;
+		}
+
+		public long getBookings() {
+			return bookings;
+		}
+
+		public long getFailedBookings() {
+			return failedBookings;
+		}
+
+		public long getReturns() {
+			return returns;
+		}
+	}
+}
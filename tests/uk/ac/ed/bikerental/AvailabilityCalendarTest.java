@@ -0,0 +1,123 @@
+package uk.ac.ed.bikerental;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+
+
+class AvailabilityCalendarTest {
+    private AvailabilityCalendar calendar;
+    private ArrayList<Bike> bikes;
+    private DateRange week;
+
+    @BeforeEach
+    void setUp() {
+        calendar = new AvailabilityCalendar(30);
+        bikes = new ArrayList<Bike>();
+        BikeType type = new BikeType("BMX", new BigDecimal(235));
+        for (int i=0; i<10; i++){
+            Bike b = new Bike(type);
+            bikes.add(b);
+            calendar.addBike(b);
+        }
+        week = new DateRange(LocalDate.now().plusDays(1), LocalDate.now().plusDays(7));
+    }
+
+    /*
+    We book some of the bikes and check the calendar is kept up to date as bikes are booked and returned
+     */
+    @Test
+    void bookAndReturnTest() {
+        Assertions.assertEquals(10, calendar.countFree(week));
+
+        for (int i=0; i<4; i++){
+            bikes.get(i).addToDates(week);
+        }
+        bikes.get(9).addToDates(new DateRange(LocalDate.now().plusDays(7), LocalDate.now().plusDays(10)));
+
+        Assertions.assertEquals(5, calendar.countFree(week));
+        Assertions.assertEquals(false, calendar.freeBikes(week).get(9));
+        Assertions.assertEquals(9, calendar.countFree(new DateRange(LocalDate.now().plusDays(8),
+                LocalDate.now().plusDays(9))));
+
+        bikes.get(0).removeFromDates(week);
+
+        Assertions.assertEquals(6, calendar.countFree(week));
+        Assertions.assertEquals(true, calendar.freeBikes(week).get(0));
+    }
+
+    /*
+    We check that removing a bike moves the last bike into its slot without losing its bookings,
+    and that every other bike keeps its slot
+     */
+    @Test
+    void removeBikeTest() {
+        bikes.get(5).addToDates(week);
+        bikes.get(9).addToDates(week);
+        Assertions.assertEquals(2, calendar.removeBike(bikes.get(2)));
+
+        Assertions.assertEquals(9, calendar.getBikes().size());
+        Assertions.assertEquals(7, calendar.countFree(week));
+        Assertions.assertEquals(false, calendar.freeBikes(week).get(5));
+        Assertions.assertEquals(false, calendar.freeBikes(week).get(2));
+        Assertions.assertEquals(true, calendar.getBikes().get(2) == bikes.get(9));
+        Assertions.assertEquals(2, bikes.get(9).getSlot());
+        Assertions.assertEquals(-1, calendar.removeBike(bikes.get(2)));
+    }
+
+    /*
+    Adding and removing many bikes at once should leave every bike in the slot the calendar says it's in,
+    with the calendar matching the bookings
+     */
+    @Test
+    void bulkChurnTest() {
+        BikeType type = bikes.get(0).getType();
+        ArrayList<Bike> added = new ArrayList<Bike>();
+        for (int i=0; i<1000; i++){
+            Bike b = new Bike(type);
+            if (i % 3 == 0) b.addToDates(week);
+            added.add(b);
+        }
+        calendar.addBikes(added);
+        Assertions.assertEquals(1010, calendar.getBikes().size());
+        Assertions.assertEquals(1010 - 334, calendar.countFree(week));
+
+        ArrayList<Bike> removed = new ArrayList<Bike>();
+        for (int i=0; i<1000; i+=2){
+            removed.add(added.get(i));
+        }
+        calendar.removeBikes(removed);
+
+        Assertions.assertEquals(510, calendar.getBikes().size());
+        // Of the 334 booked bikes the 167 with even positions were removed
+        Assertions.assertEquals(510 - 167, calendar.countFree(week));
+        for (int slot=0; slot<calendar.getBikes().size(); slot++){
+            Bike b = calendar.getBikes().get(slot);
+            Assertions.assertEquals(slot, b.getSlot());
+            Assertions.assertEquals(b.checkFree(week), calendar.freeBikes(week).get(slot));
+        }
+    }
+
+    /*
+    We check that dates outside of the window aren't answered by the calendar
+     */
+    @Test
+    void outsideWindowTest() {
+        Assertions.assertEquals(-1, calendar.countFree(new DateRange(LocalDate.now().minusDays(3), LocalDate.now())));
+        Assertions.assertEquals(-1, calendar.countFree(new DateRange(LocalDate.now(), LocalDate.now().plusDays(30))));
+        Assertions.assertEquals(10, calendar.countFree(new DateRange(LocalDate.now(), LocalDate.now().plusDays(29))));
+    }
+
+    /*
+    We check that the calendar's slot list can't be changed from outside, since slots must match bike positions
+     */
+    @Test
+    void bikesReadOnlyTest() {
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> calendar.getBikes().remove(0));
+        Assertions.assertEquals(10, calendar.getBikes().size());
+    }
+}
@@ -0,0 +1,77 @@
+package uk.ac.ed.bikerental;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+
+class BatchBookingTest {
+    private BikeProvider provider;
+    private MockDeliveryService deliveryService;
+    private BikeType bmx;
+    private Customer customer;
+
+    @BeforeEach
+    void setUp() {
+        bmx = new BikeType("BMX", new BigDecimal(235));
+        deliveryService = new MockDeliveryService();
+        provider = new BikeProvider("EnCyclePedia", new Location("KY12 3BB", "24 Penguin St."),
+                new SimplePricing(), new SimpleValuation(), deliveryService);
+        provider.getPricing().setDailyRentalPrice(bmx, new BigDecimal(30));
+        for (int i=0; i<6; i++){
+            provider.addBike(new Bike(bmx));
+        }
+        customer = new Customer("Event", "Organiser", new Location("KY12 0RJ", "1 Hall Rd."));
+    }
+
+    private Quote quoteFor(int bikes, LocalDate start, int days){
+        HashMap<BikeType, Integer> bikesToSearch = new HashMap<BikeType, Integer>();
+        bikesToSearch.put(bmx, bikes);
+        return provider.generateQuote(bikesToSearch, new DateRange(start, start.plusDays(days)));
+    }
+
+    /*
+    Booking several quotes in one batch books every bike and schedules a delivery for each of them
+     */
+    @Test
+    void batchBookedTogetherTest() {
+        ArrayList<Quote> quotes = new ArrayList<Quote>();
+        quotes.add(quoteFor(2, LocalDate.now(), 3));
+        quotes.add(quoteFor(4, LocalDate.now().plusDays(10), 3));
+
+        ArrayList<BookedQuote> booked = customer.makeBookings(quotes, null, false);
+
+        Assertions.assertEquals(2, booked.size());
+        Assertions.assertEquals(booked, customer.getBookings());
+        Assertions.assertEquals("Pending Delivery", booked.get(0).getStatus());
+        Assertions.assertEquals(false, booked.get(0).getBookingID().equals(booked.get(1).getBookingID()));
+        Assertions.assertEquals(2, deliveryService.getPickupsOn(LocalDate.now()).size());
+        Assertions.assertEquals(4, deliveryService.getPickupsOn(LocalDate.now().plusDays(10)).size());
+    }
+
+    /*
+    If one quote in the batch can't be booked none of them should be, including when two quotes in the batch
+    have the same bikes for overlapping dates
+     */
+    @Test
+    void batchIsAllOrNothingTest() {
+        Quote first = quoteFor(3, LocalDate.now(), 5);
+        Quote overlapping = quoteFor(3, LocalDate.now().plusDays(2), 5);
+        ArrayList<Quote> quotes = new ArrayList<Quote>();
+        quotes.add(first);
+        quotes.add(overlapping);
+
+        Assertions.assertThrows(IllegalStateException.class, () -> customer.makeBookings(quotes, null, true));
+
+        Assertions.assertEquals(0, customer.getBookings().size());
+        for (Bike b: provider.getBikeStocks().get(bmx)){
+            Assertions.assertEquals(0, b.getDatesRented().size());
+        }
+        Assertions.assertEquals(6, provider.getAvailability(bmx).countFree(first.getDates()));
+    }
+}
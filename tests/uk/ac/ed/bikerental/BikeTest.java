@@ -0,0 +1,128 @@
+package uk.ac.ed.bikerental;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+
+class BikeTest {
+    private Bike bike;
+    private LocalDate today;
+
+    @BeforeEach
+    void setUp() {
+        bike = new Bike(new BikeType("BMX", new BigDecimal(235)));
+        today = LocalDate.now();
+    }
+
+    /*
+    We book the bike for a week every other week and check that the gaps are free and the booked weeks are not
+    (the endpoints of a DateRange are inclusive)
+     */
+    @Test
+    void checkFreeWithManyBookingsTest() {
+        for (int i=0; i<100; i++){
+            LocalDate start = today.plusWeeks(2*i);
+            bike.addToDates(new DateRange(start, start.plusDays(6)));
+        }
+
+        Assertions.assertEquals(100, bike.getDatesRented().size());
+
+        for (int i=0; i<100; i++){
+            LocalDate booked = today.plusWeeks(2*i);
+            LocalDate free = booked.plusWeeks(1);
+            Assertions.assertEquals(false, bike.checkFree(new DateRange(booked.plusDays(2), booked.plusDays(3))));
+            Assertions.assertEquals(false, bike.checkFree(new DateRange(booked.minusDays(1), booked)));
+            Assertions.assertEquals(true, bike.checkFree(new DateRange(free, free.plusDays(6))));
+        }
+        Assertions.assertEquals(false, bike.checkFree(new DateRange(today.minusDays(5), today.plusYears(10))));
+    }
+
+    /*
+    We check that booked dates can be removed again and that the bike can't be double booked
+     */
+    @Test
+    void addAndRemoveDatesTest() {
+        DateRange week = new DateRange(today, today.plusDays(7));
+        bike.addToDates(week);
+
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> bike.addToDates(new DateRange(today.plusDays(7), today.plusDays(9))));
+
+        bike.removeFromDates(new DateRange(today, today.plusDays(7)));
+
+        Assertions.assertEquals(true, bike.checkFree(week));
+        Assertions.assertEquals(true, bike.getDatesRented().isEmpty());
+    }
+
+    /*
+    A bike goes through a delivery and return, and can't skip straight from available to delivered
+    Bookings can't go back to pending once they've been returned
+     */
+    @Test
+    void statusTransitionsTest() {
+        Assertions.assertEquals(BikeStatus.AVAILABLE, bike.getBikeStatus());
+        Assertions.assertThrows(IllegalStateException.class, () -> bike.setBikeStatus(BikeStatus.DELIVERED));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> bike.setStatus("Stolen"));
+
+        bike.onPickup();
+        bike.onDropoff();
+        Assertions.assertEquals("Delivered", bike.getStatus());
+        bike.setStatus("Available");
+        Assertions.assertEquals(true, bike.isAvailable());
+
+        BookedQuote booking = new BookedQuote();
+        Assertions.assertEquals("Pending Payment", booking.getStatus());
+        booking.setBookingStatus(BookingStatus.PENDING_COLLECTION);
+        booking.setBookingStatus(BookingStatus.RETURNED);
+        Assertions.assertThrows(IllegalStateException.class, () -> booking.setStatus("Pending Delivery"));
+    }
+
+    /*
+    The booked dates handed out are a copy, so they don't change with later bookings and can't be changed
+     */
+    @Test
+    void datesRentedCopyTest() {
+        bike.addToDates(new DateRange(today, today.plusDays(2)));
+        List<DateRange> dates = bike.getDatesRented();
+        bike.addToDates(new DateRange(today.plusDays(5), today.plusDays(6)));
+
+        Assertions.assertEquals(1, dates.size());
+        Assertions.assertEquals(2, bike.getDatesRented().size());
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> dates.clear());
+    }
+
+    /*
+    Bikes are booked by one thread while another stocks them in a calendar. Every booking has to end up in the
+    calendar, whether it was made before the bike moved over or after
+     */
+    @Test
+    void bookWhileStockingTest() throws InterruptedException {
+        AvailabilityCalendar calendar = new AvailabilityCalendar();
+        ArrayList<Bike> bikes = new ArrayList<Bike>();
+        for (int i=0; i<200; i++){
+            bikes.add(new Bike(bike.getType()));
+        }
+        Thread booker = new Thread(() -> {
+            for (int day=0; day<20; day++){
+                for (Bike b: bikes){
+                    b.addToDates(new DateRange(today.plusDays(day), today.plusDays(day)));
+                }
+            }
+        });
+        booker.start();
+        for (Bike b: bikes){
+            calendar.addBike(b);
+        }
+        booker.join();
+
+        for (int day=0; day<20; day++){
+            Assertions.assertEquals(0, calendar.countFree(new DateRange(today.plusDays(day), today.plusDays(day))));
+        }
+    }
+}
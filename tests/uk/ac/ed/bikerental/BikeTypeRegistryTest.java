@@ -0,0 +1,84 @@
+package uk.ac.ed.bikerental;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.HashMap;
+
+
+class BikeTypeRegistryTest {
+
+    /*
+    Types with the same name made separately should be equal, share an ID and intern to the first one interned,
+    while types with different names get different IDs with no gaps
+     */
+    @Test
+    void internTest() {
+        BikeTypeRegistry registry = BikeTypeRegistry.getGlobal();
+        BikeType first = new BikeType("Registry Tandem", new BigDecimal(900));
+        BikeType loaded = new BikeType("Registry Tandem", new BigDecimal(900));
+        BikeType other = new BikeType("Registry Unicycle", new BigDecimal(120));
+
+        Assertions.assertEquals(first, loaded);
+        Assertions.assertEquals(first.hashCode(), loaded.hashCode());
+        Assertions.assertEquals(first.getId(), loaded.getId());
+        Assertions.assertEquals(true, first != loaded);
+        Assertions.assertEquals(null, registry.get("Registry Tandem"));
+        Assertions.assertEquals(true, registry.intern(first) == first);
+        Assertions.assertEquals(true, registry.intern(loaded) == first);
+        Assertions.assertEquals(true, registry.get("Registry Tandem") == first);
+        Assertions.assertEquals(true, registry.intern(other) == other);
+        Assertions.assertEquals(true, registry.get(other.getId()) == other);
+
+        Assertions.assertEquals(false, first.equals(other));
+        Assertions.assertEquals(first.getId() + 1, other.getId());
+        Assertions.assertEquals(true, other.getId() < registry.size());
+        Assertions.assertEquals(null, registry.get("Registry Penny Farthing"));
+    }
+
+    /*
+    A provider and its pricing set up with one instance of a type should quote for an equal type
+    made somewhere else, such as one loaded from a file
+     */
+    @Test
+    void equalTypesFromOtherSourcesTest() {
+        BikeType bmx = new BikeType("BMX", new BigDecimal(235));
+        SimplePricing pricing = new SimplePricing();
+        pricing.setDailyRentalPrice(bmx, new BigDecimal(10));
+        BikeProvider provider = new BikeProvider("EnCyclePedia", new Location("KY12 3BB", "24 Penguin St."),
+                pricing, new SimpleValuation(), new MockDeliveryService());
+        for (int i=0; i<3; i++){
+            provider.addBike(new Bike(bmx));
+        }
+
+        BikeType loaded = new BikeType("BMX", new BigDecimal(235));
+        HashMap<BikeType, Integer> wanted = new HashMap<BikeType, Integer>();
+        wanted.put(loaded, 2);
+        Quote quote = provider.generateQuote(wanted, new DateRange(LocalDate.now(), LocalDate.now().plusDays(2)));
+
+        Assertions.assertEquals(2, quote.getBikes().size());
+        Assertions.assertEquals(new BigDecimal(40), quote.getPrice());
+        Assertions.assertEquals(true, provider.getAvailability(loaded) == provider.getAvailability(bmx));
+        Assertions.assertEquals(3, provider.getBikeStocks().get(loaded).size());
+    }
+
+    /*
+    Types with the same name but different replacement values can be made side by side, are still equal,
+    and keep their own values, which a cache valuing by type doesn't mix up
+     */
+    @Test
+    void replacementValuePerInstanceTest() {
+        BikeType cheap = new BikeType("Registry Recumbent", new BigDecimal(700));
+        BikeType dear = new BikeType("Registry Recumbent", new BigDecimal(900));
+        Assertions.assertEquals(cheap, dear);
+        Assertions.assertEquals(new BigDecimal(700), cheap.getReplacementValue());
+
+        CachingValuationPolicy valuation = new CachingValuationPolicy(new SimpleValuation(), true);
+        LocalDate today = LocalDate.now();
+        Assertions.assertEquals(new BigDecimal(700), valuation.calculateValue(new Bike(cheap), today));
+        Assertions.assertEquals(new BigDecimal(900), valuation.calculateValue(new Bike(dear), today));
+        Assertions.assertEquals(2, valuation.size());
+    }
+}
@@ -0,0 +1,70 @@
+package uk.ac.ed.bikerental;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+class BookingIdGeneratorTest {
+
+    private static List<String> generateConcurrently(BookingIdGenerator generator, int threads, int each) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        ArrayList<Future<ArrayList<String>>> results = new ArrayList<Future<ArrayList<String>>>();
+        for (int t=0; t<threads; t++){
+            results.add(executor.submit(() -> {
+                ArrayList<String> ids = new ArrayList<String>();
+                for (int i=0; i<each; i++){
+                    ids.add(generator.nextId());
+                }
+                return ids;
+            }));
+        }
+        ArrayList<String> all = new ArrayList<String>();
+        for (Future<ArrayList<String>> f: results){
+            all.addAll(f.get());
+        }
+        executor.shutdown();
+        return all;
+    }
+
+    /*
+    Many threads take IDs at once and we check there are no duplicates with either generator
+     */
+    @Test
+    void noDuplicatesUnderContentionTest() throws Exception {
+        List<String> sequential = generateConcurrently(new SequentialIdGenerator(), 8, 20000);
+        Assertions.assertEquals(sequential.size(), new HashSet<String>(sequential).size());
+
+        List<String> timeOrdered = generateConcurrently(new TimeOrderedIdGenerator(3), 8, 20000);
+        Assertions.assertEquals(timeOrdered.size(), new HashSet<String>(timeOrdered).size());
+    }
+
+    /*
+    Time ordered IDs from one node sort in the order they were made, and two nodes never make the same ID
+     */
+    @Test
+    void timeOrderedIdsSortAndDifferByNodeTest() {
+        TimeOrderedIdGenerator first = new TimeOrderedIdGenerator(1);
+        TimeOrderedIdGenerator second = new TimeOrderedIdGenerator(2);
+        ArrayList<String> ids = new ArrayList<String>();
+        HashSet<String> both = new HashSet<String>();
+        for (int i=0; i<10000; i++){
+            String id = first.nextId();
+            ids.add(id);
+            both.add(id);
+            both.add(second.nextId());
+        }
+        ArrayList<String> sorted = new ArrayList<String>(ids);
+        Collections.sort(sorted);
+        Assertions.assertEquals(ids, sorted);
+        Assertions.assertEquals(20000, both.size());
+        Assertions.assertEquals(13, ids.get(0).length());
+    }
+}
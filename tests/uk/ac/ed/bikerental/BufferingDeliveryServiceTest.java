@@ -0,0 +1,82 @@
+package uk.ac.ed.bikerental;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+
+
+class BufferingDeliveryServiceTest {
+    private MockDeliveryService mock;
+    private ArrayList<Integer> batchSizes;
+    private DeliveryService countingService;
+    private Location shop;
+    private Location customer;
+    private BikeType bmx;
+
+    @BeforeEach
+    void setUp() {
+        mock = new MockDeliveryService();
+        batchSizes = new ArrayList<Integer>();
+        // Passes everything on to the mock, recording the size of each batch
+        countingService = new DeliveryService() {
+            @Override
+            public void scheduleDelivery(Deliverable deliverable, Location pickupLocation,
+                                         Location dropoffLocation, LocalDate pickupDate) {
+                batchSizes.add(1);
+                mock.scheduleDelivery(deliverable, pickupLocation, dropoffLocation, pickupDate);
+            }
+
+            @Override
+            public void scheduleDeliveries(Collection<? extends Deliverable> deliverables, Location pickupLocation,
+                                           Location dropoffLocation, LocalDate pickupDate) {
+                batchSizes.add(deliverables.size());
+                mock.scheduleDeliveries(deliverables, pickupLocation, dropoffLocation, pickupDate);
+            }
+        };
+        shop = new Location("EH12 5AB", "1 Shop St.");
+        customer = new Location("EH3 9QQ", "2 Home Rd.");
+        bmx = new BikeType("BMX", new BigDecimal(235));
+    }
+
+    /*
+    Single deliveries on the same route are held and passed on as one batch when flushed,
+    with deliveries on different days in different batches
+     */
+    @Test
+    void deliveriesGroupedByRouteTest() {
+        BufferingDeliveryService buffering = new BufferingDeliveryService(countingService, 100, 60000);
+        LocalDate today = LocalDate.now();
+        for (int i=0; i<5; i++){
+            buffering.scheduleDelivery(new Bike(bmx), shop, new Location("EH3 9QQ", "2 Home Rd."), today);
+        }
+        buffering.scheduleDelivery(new Bike(bmx), shop, customer, today.plusDays(1));
+
+        Assertions.assertEquals(0, batchSizes.size());
+        Assertions.assertEquals(6, buffering.getBufferedCount());
+
+        buffering.flush();
+        Assertions.assertEquals(2, batchSizes.size());
+        Assertions.assertEquals(5, batchSizes.get(0));
+        Assertions.assertEquals(5, mock.getPickupsOn(today).size());
+        Assertions.assertEquals(1, mock.getPickupsOn(today.plusDays(1)).size());
+    }
+
+    /*
+    The buffer is flushed by itself once it's full
+     */
+    @Test
+    void flushedWhenFullTest() {
+        BufferingDeliveryService buffering = new BufferingDeliveryService(countingService, 3, 60000);
+        for (int i=0; i<4; i++){
+            buffering.scheduleDelivery(new Bike(bmx), shop, customer, LocalDate.now());
+        }
+        Assertions.assertEquals(1, batchSizes.size());
+        Assertions.assertEquals(3, batchSizes.get(0));
+        Assertions.assertEquals(1, buffering.getBufferedCount());
+    }
+}
@@ -0,0 +1,67 @@
+package uk.ac.ed.bikerental;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+
+class CachingValuationPolicyTest {
+    private BikeType bmx;
+    private int valuations;
+    private ValuationPolicy countingValuation;
+
+    @BeforeEach
+    void setUp() {
+        bmx = new BikeType("BMX", new BigDecimal(235));
+        valuations = 0;
+        countingValuation = (bike, date) -> {
+            valuations++;
+            return bike.getType().getReplacementValue();
+        };
+    }
+
+    /*
+    Valuing the same bike twice on a day should only ask the wrapped policy once,
+    and moving on to the next day should value it again
+     */
+    @Test
+    void valuesCachedForTheDayTest() {
+        CachingValuationPolicy valuation = new CachingValuationPolicy(countingValuation);
+        Bike bike = new Bike(bmx);
+        LocalDate today = LocalDate.now();
+
+        Assertions.assertEquals(new BigDecimal(235), valuation.calculateValue(bike, today));
+        Assertions.assertEquals(new BigDecimal(235), valuation.calculateValue(bike, today));
+        Assertions.assertEquals(1, valuations);
+
+        valuation.calculateValue(bike, today.plusDays(1));
+        Assertions.assertEquals(2, valuations);
+
+        // Earlier days aren't cached once the cache has moved on
+        valuation.calculateValue(bike, today);
+        valuation.calculateValue(bike, today);
+        Assertions.assertEquals(4, valuations);
+    }
+
+    /*
+    When valuing by type, different bikes of the same type share a value
+    After invalidating, a changed replacement value is picked up
+     */
+    @Test
+    void valuesSharedByTypeTest() {
+        CachingValuationPolicy valuation = new CachingValuationPolicy(countingValuation, true);
+        LocalDate today = LocalDate.now();
+        for (int i=0; i<5; i++){
+            valuation.calculateValue(new Bike(bmx), today);
+        }
+        Assertions.assertEquals(1, valuations);
+        Assertions.assertEquals(1, valuation.size());
+
+        bmx.setReplacementValue(new BigDecimal(300));
+        valuation.invalidateAll();
+        Assertions.assertEquals(new BigDecimal(300), valuation.calculateValue(new Bike(bmx), today));
+    }
+}
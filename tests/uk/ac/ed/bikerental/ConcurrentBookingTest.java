@@ -0,0 +1,113 @@
+package uk.ac.ed.bikerental;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+class ConcurrentBookingTest {
+    private BikeProvider provider;
+    private BikeType bmx;
+    private DateRange week;
+
+    @BeforeEach
+    void setUp() {
+        bmx = new BikeType("BMX", new BigDecimal(235));
+        provider = new BikeProvider("EnCyclePedia", new Location("KY12 3BB", "24 Penguin St."),
+                new SimplePricing(), new SimpleValuation(), new MockDeliveryService());
+        provider.getPricing().setDailyRentalPrice(bmx, new BigDecimal(30));
+        for (int i=0; i<10; i++){
+            provider.addBike(new Bike(bmx));
+        }
+        week = new DateRange(LocalDate.now(), LocalDate.now().plusDays(7));
+    }
+
+    /*
+    Several customers all get the same quote and try to book it at the same time
+    We check that only one of them succeeds and that the bikes are only booked once
+     */
+    @Test
+    void sameQuoteOnlyBookedOnceTest() throws Exception {
+        HashMap<BikeType, Integer> bikesToSearch = new HashMap<BikeType, Integer>();
+        bikesToSearch.put(bmx, 10);
+        Quote quote = provider.generateQuote(bikesToSearch, week);
+
+        int customers = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(customers);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger booked = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        for (int i=0; i<customers; i++){
+            Customer customer = new Customer("Customer", String.valueOf(i), new Location("KY12 0RJ", ""));
+            executor.submit(() -> {
+                start.await();
+                try {
+                    customer.makeBooking(quote, null, true);
+                    booked.incrementAndGet();
+                }
+                catch (IllegalStateException e) {
+                    rejected.incrementAndGet();
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        Assertions.assertEquals(true, executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        Assertions.assertEquals(1, booked.get());
+        Assertions.assertEquals(customers - 1, rejected.get());
+        for (Bike b: quote.getBikes()){
+            Assertions.assertEquals(1, b.getDatesRented().size());
+        }
+    }
+
+    /*
+    Customers repeatedly search for and book single bikes for the same week from several threads
+    We check that every bike ends up booked exactly once
+     */
+    @Test
+    void searchAndBookConcurrentlyTest() throws Exception {
+        HashMap<BikeType, Integer> bikesToSearch = new HashMap<BikeType, Integer>();
+        bikesToSearch.put(bmx, 1);
+        ArrayList<BikeProvider> providers = new ArrayList<BikeProvider>();
+        providers.add(provider);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        AtomicInteger booked = new AtomicInteger();
+        for (int i=0; i<4; i++){
+            Customer customer = new Customer("Customer", String.valueOf(i), new Location("KY12 0RJ", ""));
+            executor.submit(() -> {
+                for (int attempt=0; attempt<50; attempt++){
+                    ArrayList<Quote> quotes = customer.searchQuotes(new Location("KY12 5WE", ""),
+                            bikesToSearch, week, providers);
+                    if (quotes.isEmpty()) break;
+                    try {
+                        customer.makeBooking(quotes.get(0), null, true);
+                        booked.incrementAndGet();
+                    }
+                    catch (IllegalStateException e) {
+                        // Someone else got there first, search again
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        Assertions.assertEquals(true, executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        Assertions.assertEquals(10, booked.get());
+        for (Bike b: provider.getBikeStocks().get(bmx)){
+            Assertions.assertEquals(1, b.getDatesRented().size());
+        }
+    }
+}
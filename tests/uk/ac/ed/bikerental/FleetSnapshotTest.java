@@ -0,0 +1,135 @@
+package uk.ac.ed.bikerental;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+
+class FleetSnapshotTest {
+    private BikeType bmx;
+    private BikeType mountain;
+    private DateRange week;
+    private ArrayList<BikeProvider> providers;
+
+    @BeforeEach
+    void setUp() {
+        bmx = new BikeType("BMX", new BigDecimal(235));
+        mountain = new BikeType("Mountain", new BigDecimal("500.50"));
+        week = new DateRange(LocalDate.now(), LocalDate.now().plusDays(7));
+
+        SimplePricing simple = new SimplePricing();
+        simple.setDailyRentalPrice(bmx, new BigDecimal("12.50"));
+        DiscountedPricing discounted = new DiscountedPricing();
+        discounted.addBikeTypeToPrices(mountain, new BigDecimal(40));
+        discounted.addDiscount(new DurationDiscount(7, -1, new BigDecimal(10)));
+        discounted.addDiscount(new DurationDiscount(3, 6, new BigDecimal(5)));
+
+        providers = new ArrayList<BikeProvider>();
+        providers.add(new BikeProvider("EnCyclePedia", new Location("KY12 3BB", "24 Penguin St."),
+                simple, new SimpleValuation(), new MockDeliveryService()));
+        providers.add(new BikeProvider("Puffin Pedals", new Location("KY12 2QY", "69 Puffin Rd."),
+                discounted, new SimpleValuation(), new MockDeliveryService()));
+        providers.get(0).addPartner(providers.get(1));
+        providers.get(1).addPartner(providers.get(0));
+
+        for (int i=0; i<10; i++){
+            Bike b = new Bike(bmx);
+            // Bookings in the past, around today and far ahead
+            b.addToDates(new DateRange(LocalDate.now().minusDays(30 + i), LocalDate.now().minusDays(20)));
+            if (i % 2 == 0) b.addToDates(new DateRange(LocalDate.now().plusDays(i), LocalDate.now().plusDays(i + 3)));
+            b.addToDates(new DateRange(LocalDate.now().plusDays(1000), LocalDate.now().plusDays(1010)));
+            providers.get(0).addBike(b);
+            providers.get(1).addBike(new Bike(mountain));
+        }
+        providers.get(1).getBikeStocks().get(mountain).get(0).setBikeStatus(BikeStatus.RENTED);
+    }
+
+    private static HashMap<BikeType, Integer> wanted(BikeType type, int count) {
+        HashMap<BikeType, Integer> bikes = new HashMap<BikeType, Integer>();
+        bikes.put(type, count);
+        return bikes;
+    }
+
+    /*
+    We save two partnered providers with different pricing policies to a file and load them back,
+    checking the stock, dates, statuses, partners, prices and discounts all match
+     */
+    @Test
+    void roundTripTest() throws IOException {
+        Path directory = Files.createTempDirectory("fleet");
+        Path file = directory.resolve("fleet.snap");
+        FleetSnapshot.write(providers, file);
+
+        ArrayList<BikeType> known = new ArrayList<BikeType>();
+        known.add(bmx);
+        ArrayList<BikeProvider> loaded = FleetSnapshot.read(file, known, new SimpleValuation(), new MockDeliveryService());
+
+        Assertions.assertEquals(2, loaded.size());
+        BikeProvider shop = loaded.get(0);
+        BikeProvider puffin = loaded.get(1);
+        Assertions.assertEquals("EnCyclePedia", shop.getName());
+        Assertions.assertEquals("69 Puffin Rd.", puffin.getLocation().getAddress());
+        Assertions.assertEquals(true, shop.getPartners().contains(puffin));
+        Assertions.assertEquals(true, puffin.getPartners().contains(shop));
+
+        Assertions.assertEquals(10, shop.getBikeStocks().get(bmx).size());
+        Assertions.assertEquals(providers.get(0).getAvailability(bmx).countFree(week), shop.getAvailability(bmx).countFree(week));
+        for (int i=0; i<10; i++){
+            Assertions.assertEquals(new ArrayList<DateRange>(providers.get(0).getBikeStocks().get(bmx).get(i).getDatesRented()),
+                    new ArrayList<DateRange>(shop.getBikeStocks().get(bmx).get(i).getDatesRented()));
+        }
+
+        // The mountain type wasn't known so a new one with the same name and value is made
+        BikeType loadedMountain = puffin.getBikeStocks().keySet().iterator().next();
+        Assertions.assertEquals("Mountain", loadedMountain.getName());
+        Assertions.assertEquals(new BigDecimal("500.50"), loadedMountain.getReplacementValue());
+        Assertions.assertEquals(BikeStatus.RENTED, puffin.getBikeStocks().get(loadedMountain).get(0).getBikeStatus());
+
+        Assertions.assertEquals(true, shop.getPricing() instanceof SimplePricing);
+        Assertions.assertEquals(providers.get(0).generateQuote(wanted(bmx, 2), week).getPrice(),
+                shop.generateQuote(wanted(bmx, 2), week).getPrice());
+        Assertions.assertEquals(2, ((DiscountedPricing) puffin.getPricing()).getDurationDiscounts().size());
+        Assertions.assertEquals(providers.get(1).generateQuote(wanted(mountain, 3), week).getPrice(),
+                puffin.generateQuote(wanted(loadedMountain, 3), week).getPrice());
+
+        Files.delete(file);
+        Files.delete(directory);
+    }
+
+    /*
+    Each type name, postcode and price is only stored once however many bikes use it, so a large fleet
+    takes only a few bytes per bike
+     */
+    @Test
+    void compactTest() throws IOException {
+        for (int i=0; i<10000; i++){
+            providers.get(1).addBike(new Bike(mountain));
+        }
+        ByteBuffer state = FleetSnapshot.encode(providers);
+        Assertions.assertEquals(true, state.remaining() < 3 * 10020);
+    }
+
+    /*
+    Anything that isn't a snapshot, or is cut short, should be rejected with an IOException
+     */
+    @Test
+    void corruptSnapshotTest() {
+        ArrayList<BikeType> known = new ArrayList<BikeType>();
+        Assertions.assertThrows(IOException.class, () -> FleetSnapshot.decode(ByteBuffer.wrap(new byte[16]),
+                known, new SimpleValuation(), new MockDeliveryService()));
+
+        ByteBuffer state = FleetSnapshot.encode(providers);
+        state.limit(state.limit() - 5);
+        Assertions.assertThrows(IOException.class, () -> FleetSnapshot.decode(state,
+                known, new SimpleValuation(), new MockDeliveryService()));
+    }
+}
@@ -0,0 +1,75 @@
+package uk.ac.ed.bikerental;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Random;
+
+
+class FreeWindowsTest {
+
+    /*
+    We book random dates for a few bikes and check the start days found by the sweep against trying every
+    start day and counting the bikes free for the whole rental
+     */
+    @Test
+    void matchesCheckingEveryDayTest() {
+        Random random = new Random(42);
+        BikeType bmx = new BikeType("BMX", new BigDecimal(235));
+        long today = LocalDate.now().toEpochDay();
+        for (int round=0; round<20; round++){
+            ArrayList<Bike> bikes = new ArrayList<Bike>();
+            for (int i=0; i<6; i++){
+                Bike b = new Bike(bmx);
+                long day = today + random.nextInt(5);
+                while (day < today + 80){
+                    long end = day + random.nextInt(6);
+                    b.addToDates(DateRange.ofEpochDays(day, end));
+                    day = end + 1 + random.nextInt(8);
+                }
+                bikes.add(b);
+            }
+            int needed = 1 + random.nextInt(4);
+            long length = random.nextInt(5);
+            long from = today + random.nextInt(10);
+            long to = from + 60;
+
+            long[] starts = FreeWindows.feasibleStarts(bikes, needed, length, from, to);
+            for (long day=from; day<=to; day++){
+                int free = 0;
+                for (Bike b : bikes){
+                    if (b.checkFree(DateRange.ofEpochDays(day, day + length))) free++;
+                }
+                Assertions.assertEquals(free >= needed, contains(starts, day));
+            }
+        }
+    }
+
+    /*
+    The closest days should come first, alternating either side of the day wanted with the earlier one
+    first when two are as close
+     */
+    @Test
+    void closestTest() {
+        long[] starts = {10, 12, 20, 20};
+        ArrayList<DateRange> windows = FreeWindows.closest(starts, 15, 2, 4);
+
+        Assertions.assertEquals(4, windows.size());
+        Assertions.assertEquals(12, windows.get(0).getStartEpochDay());
+        Assertions.assertEquals(11, windows.get(1).getStartEpochDay());
+        Assertions.assertEquals(10, windows.get(2).getStartEpochDay());
+        Assertions.assertEquals(20, windows.get(3).getStartEpochDay());
+        Assertions.assertEquals(22, windows.get(3).getEndEpochDay());
+        Assertions.assertEquals(0, FreeWindows.closest(new long[0], 15, 2, 4).size());
+    }
+
+    private static boolean contains(long[] intervals, long day) {
+        for (int i=0; i<intervals.length; i+=2){
+            if (intervals[i] <= day && day <= intervals[i + 1]) return true;
+        }
+        return false;
+    }
+}
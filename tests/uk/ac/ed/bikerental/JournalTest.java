@@ -0,0 +1,288 @@
+package uk.ac.ed.bikerental;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+
+class JournalTest {
+    private Path directory;
+    private BikeType bmx;
+    private BikeType mountain;
+    private DateRange week;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("journal");
+        bmx = new BikeType("BMX", new BigDecimal(235));
+        mountain = new BikeType("Mountain", new BigDecimal(500));
+        week = new DateRange(LocalDate.now(), LocalDate.now().plusDays(7));
+    }
+
+    private static ArrayList<BikeProvider> makeProviders() {
+        ArrayList<BikeProvider> providers = new ArrayList<BikeProvider>();
+        providers.add(new BikeProvider("EnCyclePedia", new Location("KY12 3BB", "24 Penguin St."),
+                new SimplePricing(), new SimpleValuation(), new MockDeliveryService()));
+        providers.add(new BikeProvider("Puffin Pedals", new Location("KY12 2QY", "69 Puffin Rd."),
+                new DiscountedPricing(), new SimpleValuation(), new MockDeliveryService()));
+        return providers;
+    }
+
+    private static void deleteAll(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    private static Quote quote(BikeProvider provider, BikeType type, int count, DateRange dates) {
+        HashMap<BikeType, Integer> bikes = new HashMap<BikeType, Integer>();
+        bikes.put(type, count);
+        return provider.generateQuote(bikes, dates);
+    }
+
+    /*
+    We add bikes, set prices, make bookings, return one and remove a bike with the journal on, then recover
+    into new providers and check the stock, prices, bookings and booked dates all match
+     */
+    @Test
+    void recoverFromEventsTest() throws IOException {
+        ArrayList<BikeProvider> providers = makeProviders();
+        Customer customer = new Customer("Jane", "Doe", new Location("KY12 0RJ", "1 Home Rd."));
+        String kept;
+        String returned;
+        try (Journal journal = new Journal(directory, 4096)) {
+            for (BikeProvider p : providers) {
+                p.setJournal(journal);
+            }
+            BikeProvider shop = providers.get(0);
+            for (int i=0; i<5; i++){
+                shop.addBike(new Bike(bmx));
+                providers.get(1).addBike(new Bike(mountain));
+            }
+            shop.setDailyRentalPrice(bmx, new BigDecimal("12.50"));
+            providers.get(1).setDailyRentalPrice(mountain, new BigDecimal(40));
+            shop.removeBike(shop.getBikeStocks().get(bmx).get(0));
+
+            customer.makeBooking(quote(shop, bmx, 2, week), null, true);
+            customer.makeBooking(quote(shop, bmx, 2, week), null, true);
+            kept = customer.getBookings().get(0).getBookingID();
+            returned = customer.getBookings().get(1).getBookingID();
+            shop.returnOrder(returned);
+
+            // Enough events to fill several of the small segments
+            for (int i=0; i<200; i++){
+                shop.setDailyRentalPrice(bmx, new BigDecimal("12.50"));
+            }
+            Assertions.assertEquals(true, journal.getEventsWritten() > 200);
+        }
+
+        ArrayList<BikeProvider> restored = makeProviders();
+        ArrayList<BikeType> types = new ArrayList<BikeType>();
+        types.add(bmx);
+        Journal.Recovery recovery = Journal.recover(directory, restored, types);
+
+        BikeProvider shop = restored.get(0);
+        Assertions.assertEquals(4, shop.getBikeStocks().get(bmx).size());
+        Assertions.assertEquals(5, restored.get(1).getBikeStocks().get(recovery.getTypes().get("Mountain")).size());
+        Assertions.assertEquals(new BigDecimal("12.50"), shop.getPricing().getDailyRentalPrices().get(bmx));
+        Assertions.assertEquals(2, shop.getAvailability(bmx).countFree(week));
+
+        BookedQuote booking = shop.getBookings().get(kept);
+        Assertions.assertEquals("Pending Collection", booking.getStatus());
+        Assertions.assertEquals("Jane", booking.getCustomer().getFirstname());
+        Assertions.assertEquals("Returned", recovery.getBooking(returned).getStatus());
+        Assertions.assertEquals(1, recovery.getCustomers().size());
+        deleteAll(directory);
+    }
+
+    /*
+    After a snapshot only the events after it should be replayed, and a record torn half way through
+    being written should be ignored
+     */
+    @Test
+    void recoverFromSnapshotTest() throws IOException {
+        ArrayList<BikeProvider> providers = makeProviders();
+        BikeProvider shop = providers.get(0);
+        Customer customer = new Customer("Jane", "Doe", new Location("KY12 0RJ", "1 Home Rd."));
+        long snapshotSeq;
+        try (Journal journal = new Journal(directory, 4096)) {
+            shop.setJournal(journal);
+            for (int i=0; i<100; i++){
+                shop.addBike(new Bike(bmx));
+            }
+            customer.makeBooking(quote(shop, bmx, 10, week), null, true);
+            snapshotSeq = journal.snapshot(providers);
+            Assertions.assertEquals(101, snapshotSeq);
+
+            shop.addBike(new Bike(bmx));
+            customer.makeBooking(quote(shop, bmx, 1, week), null, true);
+        }
+
+        // Tear the last record by corrupting the end of it
+        List<Path> segments = new ArrayList<Path>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(p -> p.toString().endsWith(".seg")).sorted().forEach(segments::add);
+        }
+        Path last = segments.get(segments.size() - 1);
+        byte[] bytes = Files.readAllBytes(last);
+        int end = bytes.length - 1;
+        while (bytes[end] == 0) end--;
+        bytes[end] ^= 0x7f;
+        Files.write(last, bytes);
+
+        ArrayList<BikeProvider> restored = makeProviders();
+        ArrayList<BikeType> types = new ArrayList<BikeType>();
+        types.add(bmx);
+        Journal.Recovery recovery = Journal.recover(directory, restored, types);
+
+        Assertions.assertEquals(snapshotSeq, recovery.getSnapshotSeq());
+        Assertions.assertEquals(1, recovery.getEventsReplayed());
+        Assertions.assertEquals(101, restored.get(0).getBikeStocks().get(bmx).size());
+        Assertions.assertEquals(91, restored.get(0).getAvailability(bmx).countFree(week));
+
+        // A journal opened after recovery carries on from the last good event
+        try (Journal journal = new Journal(directory, 4096)) {
+            Assertions.assertEquals(true, journal.getLastSeq() >= recovery.getLastSeq());
+        }
+        deleteAll(directory);
+    }
+
+    /*
+    Bikes added and removed in bulk are journaled with the slots they were in, so after recovery the same
+    bikes (told apart here by their bookings) are in the same slots
+     */
+    @Test
+    void recoverBulkChurnTest() throws IOException {
+        ArrayList<BikeProvider> providers = makeProviders();
+        BikeProvider shop = providers.get(0);
+        try (Journal journal = new Journal(directory, 4096)) {
+            shop.setJournal(journal);
+            ArrayList<Bike> added = new ArrayList<Bike>();
+            for (int i=0; i<50; i++){
+                added.add(new Bike(bmx));
+            }
+            shop.addBikes(added);
+            Customer customer = new Customer("Jane", "Doe", new Location("KY12 0RJ", "1 Home Rd."));
+            customer.makeBooking(quote(shop, bmx, 5, week), null, true);
+
+            ArrayList<Bike> removed = new ArrayList<Bike>();
+            for (int i=0; i<50; i+=3){
+                removed.add(added.get(i));
+            }
+            shop.removeBikes(removed);
+        }
+
+        ArrayList<BikeProvider> restored = makeProviders();
+        ArrayList<BikeType> types = new ArrayList<BikeType>();
+        types.add(bmx);
+        Journal.recover(directory, restored, types);
+
+        List<Bike> before = shop.getBikeStocks().get(bmx);
+        List<Bike> after = restored.get(0).getBikeStocks().get(bmx);
+        Assertions.assertEquals(before.size(), after.size());
+        for (int slot=0; slot<before.size(); slot++){
+            Assertions.assertEquals(before.get(slot).checkFree(week), after.get(slot).checkFree(week));
+        }
+        Assertions.assertEquals(shop.getAvailability(bmx).countFree(week), restored.get(0).getAvailability(bmx).countFree(week));
+        deleteAll(directory);
+    }
+
+    /*
+    After a restart the sequential IDs start again from the same place, so recovery has to move them on past the IDs
+    restored or a new booking would take the ID of an old one and be lost on the next recovery.
+    This is checked both with the old booking replayed from events and with it in a snapshot
+     */
+    @Test
+    void recoverBookRecoverTest() throws IOException {
+        BookingIdGenerator original = BookedQuote.getIdGenerator();
+        Customer customer = new Customer("Jane", "Doe", new Location("KY12 0RJ", "1 Home Rd."));
+        ArrayList<BikeType> types = new ArrayList<BikeType>();
+        types.add(bmx);
+        try {
+            for (boolean snapshot : new boolean[] {false, true}){
+                // Each run starts from its own base, clear of the IDs the other tests have registered
+                long base = snapshot ? 2_000_000_000L : 1_000_000_000L;
+                BookedQuote.setIdGenerator(new SequentialIdGenerator(base));
+                ArrayList<BikeProvider> providers = makeProviders();
+                String first;
+                try (Journal journal = new Journal(directory, 4096)) {
+                    providers.get(0).setJournal(journal);
+                    for (int i=0; i<4; i++){
+                        providers.get(0).addBike(new Bike(bmx));
+                    }
+                    customer.makeBooking(quote(providers.get(0), bmx, 2, week), null, true);
+                    first = customer.getBookings().get(customer.getBookings().size() - 1).getBookingID();
+                    if (snapshot) journal.snapshot(providers);
+                }
+
+                // Restart
+                BookedQuote.setIdGenerator(new SequentialIdGenerator(base));
+                ArrayList<BikeProvider> restarted = makeProviders();
+                Journal.Recovery recovery = Journal.recover(directory, restarted, types);
+                Assertions.assertEquals(Long.parseLong(first), recovery.getHighestSequentialId());
+                String second;
+                try (Journal journal = new Journal(directory, 4096)) {
+                    restarted.get(0).setJournal(journal);
+                    customer.makeBooking(quote(restarted.get(0), bmx, 2, week), null, true);
+                    second = customer.getBookings().get(customer.getBookings().size() - 1).getBookingID();
+                }
+                Assertions.assertEquals(false, first.equals(second));
+
+                ArrayList<BikeProvider> again = makeProviders();
+                Journal.Recovery secondRecovery = Journal.recover(directory, again, types);
+                Assertions.assertEquals(true, secondRecovery.getBooking(first) != null);
+                Assertions.assertEquals(true, secondRecovery.getBooking(second) != null);
+                Assertions.assertEquals(0, again.get(0).getAvailability(bmx).countFree(week));
+                deleteAll(directory);
+                directory = Files.createTempDirectory("journal");
+            }
+        }
+        finally {
+            BookedQuote.setIdGenerator(original);
+        }
+        deleteAll(directory);
+    }
+
+    /*
+    A background snapshot that throws is recorded rather than stopping the snapshots, and closing the
+    journal reports it
+     */
+    @Test
+    void snapshotFailureReportedTest() throws IOException, InterruptedException {
+        ArrayList<BikeProvider> providers = new ArrayList<BikeProvider>();
+        providers.add(new BikeProvider("Broken Brakes", new Location("KY12 3BB", "1 Skid Row"),
+                new SimplePricing() {
+                    @Override
+                    public Map<BikeType, BigDecimal> getDailyRentalPrices() {
+                        throw new IllegalStateException("Prices unavailable");
+                    }
+                }, new SimpleValuation(), new MockDeliveryService()));
+
+        Journal journal = new Journal(directory, 4096);
+        journal.startSnapshots(providers, 5);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (journal.getSnapshotFailures() < 2 && System.currentTimeMillis() < deadline){
+            Thread.sleep(5);
+        }
+        Assertions.assertEquals(true, journal.getSnapshotFailures() >= 2);
+        Assertions.assertEquals(true, journal.getLastSnapshotFailure() instanceof IllegalStateException);
+
+        IOException reported = Assertions.assertThrows(IOException.class, journal::close);
+        Assertions.assertEquals(true, reported.getCause() instanceof IllegalStateException);
+        deleteAll(directory);
+    }
+}
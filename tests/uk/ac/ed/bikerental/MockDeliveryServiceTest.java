@@ -0,0 +1,112 @@
+package uk.ac.ed.bikerental;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+
+
+class MockDeliveryServiceTest {
+    private BikeType bmx;
+    private Location shop;
+    private Location home;
+    private Location partner;
+
+    @BeforeEach
+    void setUp() {
+        bmx = new BikeType("BMX", new BigDecimal(235));
+        shop = new Location("EH12 5AB", "1 Shop St.");
+        home = new Location("EH3 9QQ", "2 Home Rd.");
+        partner = new Location("EH1 1AA", "3 Partner Pl.");
+    }
+
+    /*
+    Pickups on the same day are grouped by route, and a bike scheduled twice on a day is only picked up once
+     */
+    @Test
+    void pickupsGroupedByRouteTest() {
+        MockDeliveryService deliveryService = new MockDeliveryService();
+        LocalDate today = LocalDate.now();
+        Bike first = new Bike(bmx);
+        deliveryService.scheduleDelivery(first, shop, home, today);
+        deliveryService.scheduleDelivery(new Bike(bmx), shop, new Location("EH3 9QQ", "2 Home Rd."), today);
+        deliveryService.scheduleDelivery(new Bike(bmx), shop, partner, today);
+        deliveryService.scheduleDelivery(first, shop, partner, today);
+
+        Assertions.assertEquals(3, deliveryService.getPickupsOn(today).size());
+        Assertions.assertEquals(2, deliveryService.getRoutesOn(today).size());
+        Assertions.assertEquals(null, deliveryService.getPickupsOn(today.plusDays(1)));
+        Assertions.assertEquals(3, deliveryService.getPendingPickups());
+
+        deliveryService.carryOutPickups(today);
+        Assertions.assertEquals("Out for Delivery", first.getStatus());
+        Assertions.assertEquals(0, deliveryService.getPendingPickups());
+        Assertions.assertEquals(3, deliveryService.getPendingDropoffs());
+        Assertions.assertEquals(null, deliveryService.getPickupsOn(today));
+
+        deliveryService.carryOutDropoffs();
+        Assertions.assertEquals("Delivered", first.getStatus());
+        Assertions.assertEquals(0, deliveryService.getDropoffs().size());
+    }
+
+    /*
+    We simulate two years of deliveries with a ring much shorter than that, so some days have to be kept
+    outside of the ring, and check everything is picked up and dropped off on the right day
+     */
+    @Test
+    void simulateSeasonsTest() {
+        MockDeliveryService deliveryService = new MockDeliveryService(30);
+        LocalDate start = LocalDate.of(2020, 1, 1);
+        ArrayList<Bike> bikes = new ArrayList<Bike>();
+        for (int day=0; day<730; day++){
+            ArrayList<Bike> batch = new ArrayList<Bike>();
+            for (int i=0; i<1 + day % 3; i++){
+                batch.add(new Bike(bmx));
+            }
+            deliveryService.scheduleDeliveries(batch, shop, day % 2 == 0 ? home : partner, start.plusDays(day));
+            bikes.addAll(batch);
+        }
+        Assertions.assertEquals(bikes.size(), deliveryService.getPendingPickups());
+        Assertions.assertEquals(bikes.size(), deliveryService.getMaxPendingPickups());
+
+        for (int day=0; day<730; day++){
+            Assertions.assertEquals(1 + day % 3, deliveryService.getPickupsOn(start.plusDays(day)).size());
+            deliveryService.carryOutPickups(start.plusDays(day));
+            deliveryService.carryOutDropoffs();
+        }
+        Assertions.assertEquals(0, deliveryService.getPendingPickups());
+        Assertions.assertEquals(0, deliveryService.getPendingDropoffs());
+        Assertions.assertEquals(1460, deliveryService.getDispatches());
+        for (Bike b: bikes){
+            Assertions.assertEquals("Delivered", b.getStatus());
+        }
+    }
+
+    /*
+    A day put outside of the ring because its slot was in use should still be found and picked up after
+    the day holding the slot has been dispatched and more deliveries are scheduled for it
+     */
+    @Test
+    void overflowDayAfterSlotFreedTest() {
+        MockDeliveryService deliveryService = new MockDeliveryService(7);
+        LocalDate d0 = LocalDate.now();
+        LocalDate d1 = d0.plusDays(7);
+        Bike early = new Bike(bmx);
+        Bike late = new Bike(bmx);
+        Bike later = new Bike(bmx);
+        deliveryService.scheduleDelivery(early, shop, home, d0);
+        deliveryService.scheduleDelivery(late, shop, home, d1);
+        deliveryService.carryOutPickups(d0);
+
+        deliveryService.scheduleDelivery(later, shop, partner, d1);
+        Assertions.assertEquals(2, deliveryService.getPickupsOn(d1).size());
+        deliveryService.carryOutPickups(d1);
+        Assertions.assertEquals("Out for Delivery", late.getStatus());
+        Assertions.assertEquals("Out for Delivery", later.getStatus());
+        Assertions.assertEquals(0, deliveryService.getPendingPickups());
+        Assertions.assertEquals(null, deliveryService.getPickupsOn(d1));
+    }
+}
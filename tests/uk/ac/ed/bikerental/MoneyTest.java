@@ -0,0 +1,68 @@
+package uk.ac.ed.bikerental;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Random;
+
+
+class MoneyTest {
+
+    @Test
+    void toAndFromPenceTest() {
+        Assertions.assertEquals(1050, Money.toPence(new BigDecimal("10.5")));
+        Assertions.assertEquals(1000, Money.toPence(new BigDecimal("10.000")));
+        Assertions.assertEquals(Money.NOT_PENCE, Money.toPence(new BigDecimal("10.125")));
+        Assertions.assertEquals(new BigDecimal("10.50"), Money.fromPence(1050, 2));
+        Assertions.assertEquals(new BigDecimal("12"), Money.fromPence(1200, 0));
+    }
+
+    /*
+    We price random orders with prices of different scales and check that both pricing policies give
+    exactly the same BigDecimal (including its scale) as doing all the arithmetic with BigDecimals
+     */
+    @Test
+    void pricesMatchBigDecimalArithmeticTest() {
+        Random random = new Random(7);
+        String[] prices = {"10", "12.5", "7.25", "9.999", "3.000", "1E+1", "0"};
+        BigDecimal[] discounts = {new BigDecimal(0), new BigDecimal(5), new BigDecimal(15), new BigDecimal("12.5")};
+
+        for (int round=0; round<200; round++){
+            ArrayList<BikeType> types = new ArrayList<BikeType>();
+            SimplePricing simple = new SimplePricing();
+            DiscountedPricing discounted = new DiscountedPricing();
+            for (int i=0; i<3; i++){
+                BikeType type = new BikeType("Type " + i, new BigDecimal(100));
+                BigDecimal price = new BigDecimal(prices[random.nextInt(prices.length)]);
+                types.add(type);
+                simple.setDailyRentalPrice(type, price);
+                discounted.addBikeTypeToPrices(type, price);
+            }
+            BigDecimal discount = discounts[random.nextInt(discounts.length)];
+            discounted.addDiscount(new DurationDiscount(0, -1, discount));
+
+            ArrayList<Bike> bikes = new ArrayList<Bike>();
+            int count = random.nextInt(20);
+            for (int i=0; i<count; i++){
+                bikes.add(new Bike(types.get(random.nextInt(types.size()))));
+            }
+            DateRange dates = new DateRange(LocalDate.now(), LocalDate.now().plusDays(random.nextInt(30)));
+
+            BigDecimal simpleTotal = new BigDecimal(0);
+            BigDecimal discountedTotal = new BigDecimal(0);
+            for (Bike b: bikes){
+                simpleTotal = simpleTotal.add(simple.getRates().get(b.getType()));
+                discountedTotal = discountedTotal.add(discounted.getDailyPrices().get(b.getType())
+                        .multiply(new BigDecimal(dates.toDays())));
+            }
+            BigDecimal factor = new BigDecimal(1).subtract(discount.divide(new BigDecimal(100)));
+
+            Assertions.assertEquals(simpleTotal.multiply(new BigDecimal(dates.toDays())),
+                    simple.calculatePrice(bikes, dates));
+            Assertions.assertEquals(discountedTotal.multiply(factor), discounted.calculatePrice(bikes, dates));
+        }
+    }
+}
@@ -86,4 +86,35 @@ public class PricingPolicyTests {
         Assertions.assertEquals(expectedPrice.stripTrailingZeros(), actualPrice.stripTrailingZeros());
     }
 
-}
\ No newline at end of file
+    /*
+    Pricing by the number of bikes of each type should give the same price as pricing the bikes themselves
+     */
+    @Test
+    void calculatePriceByTypeTest(){
+        HashMap<BikeType, Integer> bikeCounts = new HashMap<BikeType, Integer>();
+        bikeCounts.put(sampleType, bikes.size());
+
+        Assertions.assertEquals(pricing.calculatePrice(bikes, sampleDates), pricing.calculatePrice(bikeCounts, sampleDates));
+    }
+
+    /*
+    When discounts overlap the biggest one should be used, including for rentals much longer than a year
+    Discounts with the same value should stay in the order they were added
+     */
+    @Test
+    void overlappingDiscountsTest(){
+        DurationDiscount sameAsTen = new DurationDiscount(20, 30, new BigDecimal(10));
+        pricing.addDiscount(new DurationDiscount(10, 1000, new BigDecimal(50)));
+        pricing.addDiscount(sameAsTen);
+
+        ArrayList<DurationDiscount> discounts = pricing.getDurationDiscounts();
+        Assertions.assertEquals(true, discounts.get(3) == sameAsTen);
+        Assertions.assertEquals(new BigDecimal(50), discounts.get(discounts.size() - 1).discount);
+
+        DateRange fortnight = new DateRange(LocalDate.now(), LocalDate.now().plusDays(14));
+        DateRange longRental = new DateRange(LocalDate.now(), LocalDate.now().plusDays(2000));
+        Assertions.assertEquals(0, new BigDecimal(350).compareTo(pricing.calculatePrice(bikes, fortnight)));
+        Assertions.assertEquals(0, new BigDecimal(85000).compareTo(pricing.calculatePrice(bikes, longRental)));
+    }
+
+}
@@ -0,0 +1,61 @@
+package uk.ac.ed.bikerental;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+class ProviderRegistryTest {
+    private ProviderRegistry registry;
+    private BikeProvider edinburgh;
+    private BikeProvider leith;
+    private BikeProvider belfast;
+
+    @BeforeEach
+    void setUp() {
+        edinburgh = makeProvider("EH8 9AB");
+        leith = makeProvider("EH6 6QQ");
+        belfast = makeProvider("BT17 6NL");
+
+        registry = new ProviderRegistry();
+        registry.addProvider(edinburgh);
+        registry.addProvider(leith);
+        registry.addProvider(belfast);
+        registry.addProvider(leith);
+    }
+
+    private static BikeProvider makeProvider(String postcode) {
+        return new BikeProvider(postcode, new Location(postcode, ""), new SimplePricing(),
+                new SimpleValuation(), new MockDeliveryService());
+    }
+
+    /*
+    We check that only the providers in the same postal area or district are found
+     */
+    @Test
+    void providersNearTest() {
+        Location customer = new Location("EH8 7EB", "");
+
+        Assertions.assertEquals(3, registry.size());
+        Assertions.assertEquals(2, registry.getProvidersNear(customer).size());
+        Assertions.assertEquals(true, registry.getProvidersNear(customer).contains(leith));
+        Assertions.assertEquals(1, registry.getProvidersInDistrict(customer).size());
+        Assertions.assertEquals(edinburgh, registry.getProvidersInDistrict(customer).get(0));
+        Assertions.assertEquals(0, registry.getProvidersNear(new Location("KY12 0RJ", "")).size());
+    }
+
+    /*
+    We move a provider and remove another and check the registry is kept up to date
+     */
+    @Test
+    void updateAndRemoveTest() {
+        Location customer = new Location("EH8 7EB", "");
+
+        leith.setLocation(new Location("BT1 1AA", ""));
+        registry.updateLocation(leith);
+        registry.removeProvider(edinburgh);
+
+        Assertions.assertEquals(0, registry.getProvidersNear(customer).size());
+        Assertions.assertEquals(2, registry.getProvidersNear(new Location("BT9 5AB", "")).size());
+    }
+}
@@ -0,0 +1,112 @@
+package uk.ac.ed.bikerental;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.HashMap;
+
+
+class QuoteCacheTest {
+    private BikeProvider provider;
+    private BikeType bmx;
+    private BikeType yellowBike;
+    private HashMap<BikeType, Integer> bikesToSearch;
+    private DateRange week;
+    private Customer customer;
+
+    @BeforeEach
+    void setUp() {
+        bmx = new BikeType("BMX", new BigDecimal(235));
+        yellowBike = new BikeType("Yellow Bike", new BigDecimal(75));
+        provider = new BikeProvider("EnCyclePedia", new Location("KY12 3BB", "24 Penguin St."),
+                new SimplePricing(), new SimpleValuation(), new MockDeliveryService());
+        provider.getPricing().setDailyRentalPrice(bmx, new BigDecimal(30));
+        provider.getPricing().setDailyRentalPrice(yellowBike, new BigDecimal(10));
+        for (int i=0; i<10; i++){
+            provider.addBike(new Bike(bmx));
+            provider.addBike(new Bike(yellowBike));
+        }
+        provider.enableQuoteCache(100, 60000);
+
+        bikesToSearch = new HashMap<BikeType, Integer>();
+        bikesToSearch.put(bmx, 4);
+        week = new DateRange(LocalDate.now(), LocalDate.now().plusDays(7));
+        customer = new Customer("Juan", "Del Potro", new Location("KY12 0RJ", ""));
+    }
+
+    /*
+    We check that the same search gives back the same quote, and that a search for a different
+    number of bikes or different dates isn't answered from the cache
+     */
+    @Test
+    void repeatedSearchHitsTest() {
+        Quote first = provider.generateQuote(bikesToSearch, week);
+        Quote second = provider.generateQuote(new HashMap<BikeType, Integer>(bikesToSearch), week);
+
+        Assertions.assertSame(first, second);
+        Assertions.assertEquals(1, provider.getQuoteCache().getHits());
+        Assertions.assertEquals(1, provider.getQuoteCache().getMisses());
+
+        bikesToSearch.put(bmx, 5);
+        Assertions.assertNotSame(first, provider.generateQuote(bikesToSearch, week));
+        Assertions.assertNotSame(first, provider.generateQuote(bikesToSearch,
+                new DateRange(LocalDate.now(), LocalDate.now().plusDays(8))));
+        Assertions.assertEquals(3, provider.getQuoteCache().getMisses());
+    }
+
+    /*
+    We check that booking a bike of the searched type invalidates the quote but booking
+    a bike of another type doesn't
+     */
+    @Test
+    void bookingInvalidatesTest() {
+        Quote first = provider.generateQuote(bikesToSearch, week);
+
+        HashMap<BikeType, Integer> otherType = new HashMap<BikeType, Integer>();
+        otherType.put(yellowBike, 2);
+        customer.makeBooking(provider.generateQuote(otherType, week), null, true);
+        Assertions.assertSame(first, provider.generateQuote(bikesToSearch, week));
+
+        customer.makeBooking(first, null, true);
+        Quote afterBooking = provider.generateQuote(bikesToSearch, week);
+        Assertions.assertNotSame(first, afterBooking);
+        for (Bike b: afterBooking.getBikes()){
+            Assertions.assertEquals(false, first.getBikes().contains(b));
+        }
+
+        provider.returnBikes(customer.getBookings().get(1));
+        Assertions.assertNotSame(afterBooking, provider.generateQuote(bikesToSearch, week));
+    }
+
+    /*
+    We check that adding stock, changing a bike's status, replacing the pricing policy and changing a price all invalidate
+     */
+    @Test
+    void stockAndPolicyChangesInvalidateTest() {
+        bikesToSearch.put(bmx, 11);
+        Assertions.assertNull(provider.generateQuote(bikesToSearch, week));
+        provider.addBike(new Bike(bmx));
+        Quote quote = provider.generateQuote(bikesToSearch, week);
+        Assertions.assertNotNull(quote);
+
+        quote.getBikes().iterator().next().setStatus("Rented");
+        Assertions.assertNull(provider.generateQuote(bikesToSearch, week));
+
+        quote.getBikes().iterator().next().setStatus("Available");
+        Quote beforePolicyChange = provider.generateQuote(bikesToSearch, week);
+        SimplePricing cheaper = new SimplePricing();
+        cheaper.setDailyRentalPrice(bmx, new BigDecimal(1));
+        provider.setPricing(cheaper);
+        Quote afterPolicyChange = provider.generateQuote(bikesToSearch, week);
+
+        Assertions.assertNotSame(beforePolicyChange, afterPolicyChange);
+        Assertions.assertEquals(0, afterPolicyChange.getPrice().compareTo(new BigDecimal(77)));
+
+        // Changing a price in place through the provider invalidates too
+        provider.setDailyRentalPrice(bmx, new BigDecimal(2));
+        Assertions.assertEquals(0, provider.generateQuote(bikesToSearch, week).getPrice().compareTo(new BigDecimal(154)));
+    }
+}
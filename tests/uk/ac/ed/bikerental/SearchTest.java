@@ -0,0 +1,251 @@
+package uk.ac.ed.bikerental;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+
+class SearchTest {
+    private BikeType bmx;
+    private ArrayList<BikeProvider> providers;
+    private HashMap<BikeType, Integer> bikesToSearch;
+    private DateRange week;
+
+    @BeforeEach
+    void setUp() {
+        bmx = new BikeType("BMX", new BigDecimal(235));
+        providers = new ArrayList<BikeProvider>();
+        for (int i=0; i<20; i++){
+            BikeProvider bp = new BikeProvider("Provider " + i, new Location("KY12 3BB", i + " Penguin St."),
+                    new SimplePricing(), new SimpleValuation(), new MockDeliveryService());
+            bp.getPricing().setDailyRentalPrice(bmx, new BigDecimal(10 + i));
+            for (int j=0; j<5; j++){
+                bp.addBike(new Bike(bmx));
+            }
+            providers.add(bp);
+        }
+        bikesToSearch = new HashMap<BikeType, Integer>();
+        bikesToSearch.put(bmx, 3);
+        week = new DateRange(LocalDate.now(), LocalDate.now().plusDays(7));
+    }
+
+    /*
+    We check that the parallel search gives the same quotes in the same order as the normal search
+     */
+    @Test
+    void parallelQuotesInProviderOrderTest() {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Search search = new Search(new Location("KY12 5WE", ""), week, bikesToSearch, providers);
+            search.setExecutor(executor);
+            ArrayList<Quote> quotes = new ArrayList<Quote>(search.getQuotes());
+
+            Assertions.assertEquals(providers.size(), quotes.size());
+            for (int i=0; i<providers.size(); i++){
+                Assertions.assertEquals(providers.get(i), quotes.get(i).getProvider());
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /*
+    We add a provider that takes a long time to quote and check that it is left out when there is a timeout
+     */
+    @Test
+    void slowProviderTimesOutTest() {
+        BikeProvider slow = new BikeProvider("Slow Spokes", new Location("KY12 3BB", "1 Snail Rd."),
+                new SimplePricing(), new SimpleValuation(), new MockDeliveryService()) {
+            @Override
+            public Quote generateQuote(Map<BikeType, Integer> bikesWanted, DateRange dates) {
+                try {
+                    Thread.sleep(10000);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            }
+        };
+        providers.add(0, slow);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Search search = new Search(new Location("KY12 5WE", ""), week, bikesToSearch, providers);
+            search.setExecutor(executor);
+            search.setProviderTimeout(200);
+
+            long start = System.currentTimeMillis();
+            Assertions.assertEquals(20, search.getQuotes().size());
+            Assertions.assertEquals(true, System.currentTimeMillis() - start < 5000);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /*
+    With three of the five bikes at the first provider booked for the week wanted, three bikes are only free
+    from the day after the bookings end, while every other provider can rent them out for the week itself
+     */
+    @Test
+    void alternativeDatesTest() {
+        BikeProvider busy = providers.get(0);
+        for (int i=0; i<3; i++){
+            busy.getBikeStocks().get(bmx).get(i).addToDates(new DateRange(LocalDate.now().plusDays(3), LocalDate.now().plusDays(12)));
+        }
+        Search search = new Search(new Location("KY12 5WE", ""), week, bikesToSearch, providers);
+        Assertions.assertEquals(providers.size() - 1, search.getQuotes().size());
+
+        Map<BikeProvider, ArrayList<DateRange>> alternatives = search.getAlternativeDates(2, 30);
+        Assertions.assertEquals(providers.size(), alternatives.size());
+        ArrayList<DateRange> windows = alternatives.get(busy);
+        Assertions.assertEquals(2, windows.size());
+        Assertions.assertEquals(new DateRange(LocalDate.now().plusDays(13), LocalDate.now().plusDays(20)), windows.get(0));
+        Assertions.assertEquals(new DateRange(LocalDate.now().plusDays(14), LocalDate.now().plusDays(21)), windows.get(1));
+        Assertions.assertEquals(week, alternatives.get(providers.get(1)).get(0));
+
+        // Quoting for the first alternative works
+        Assertions.assertEquals(true, busy.generateQuote(bikesToSearch, windows.get(0)) != null);
+    }
+
+    /*
+    The streamed quotes, in either mode, should be the same quotes getQuotes gives
+     */
+    @Test
+    void streamQuotesTest() {
+        Search search = new Search(new Location("KY12 5WE", ""), week, bikesToSearch, providers);
+        HashSet<BikeProvider> expected = new HashSet<BikeProvider>(providers);
+        Assertions.assertEquals(expected, search.streamQuotes().map(Quote::getProvider).collect(Collectors.toSet()));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            search.setExecutor(executor);
+            Assertions.assertEquals(expected, search.streamQuotes().map(Quote::getProvider).collect(Collectors.toSet()));
+            // Only taking the first quote closes the stream without waiting for the rest
+            Assertions.assertEquals(true, search.streamQuotes().findFirst().isPresent());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /*
+    The providers' prices go up with their number, so the cheapest three are the first three, cheapest first,
+    whether or not the quotes are generated in parallel
+     */
+    @Test
+    void topQuotesByPriceTest() {
+        Search search = new Search(new Location("KY12 5WE", ""), week, bikesToSearch, providers);
+        ArrayList<Quote> top = search.getTopQuotes(3, Quote.BY_PRICE);
+        Assertions.assertEquals(3, top.size());
+        for (int i=0; i<3; i++){
+            Assertions.assertEquals(providers.get(i), top.get(i).getProvider());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            search.setExecutor(executor);
+            ArrayList<Quote> parallelTop = search.getTopQuotes(3, Quote.BY_PRICE);
+            for (int i=0; i<3; i++){
+                Assertions.assertEquals(providers.get(i), parallelTop.get(i).getProvider());
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        search.setExecutor(null);
+        Assertions.assertEquals(providers.size(), search.getTopQuotes(100, Quote.BY_DEPOSIT).size());
+        ArrayList<Quote> cheapest = search.getCheapestQuotes(3);
+        for (int i=0; i<3; i++){
+            Assertions.assertEquals(providers.get(i), cheapest.get(i).getProvider());
+        }
+    }
+
+    /*
+    Once the three cheapest quotes are found a provider pricier than all of them is never asked to look for
+    bikes, but a comparator that only ranks by price the same way still asks it
+     */
+    @Test
+    void cheapestQuotesPruningTest() {
+        ArrayList<BikeProvider> nearby = new ArrayList<BikeProvider>(providers.subList(0, 3));
+        BikeProvider expensive = new BikeProvider("Gold Gears", new Location("KY12 3BB", "1 Bullion Rd."),
+                new SimplePricing(), new SimpleValuation(), new MockDeliveryService()) {
+            @Override
+            public Quote generateQuote(Map<BikeType, Integer> bikesWanted, DateRange dates) {
+                throw new IllegalStateException("Should have been priced out");
+            }
+        };
+        expensive.getPricing().setDailyRentalPrice(bmx, new BigDecimal(1000));
+        nearby.add(expensive);
+
+        Search search = new Search(new Location("KY12 5WE", ""), week, bikesToSearch, nearby);
+        ArrayList<Quote> cheapest = search.getCheapestQuotes(3);
+        for (int i=0; i<3; i++){
+            Assertions.assertEquals(providers.get(i), cheapest.get(i).getProvider());
+        }
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> search.getTopQuotes(3, Comparator.comparing(Quote::getPrice)));
+    }
+
+    /*
+    With a budget of the fifth provider's price only the first five quote, and the providers over budget
+    are never asked to look for bikes
+     */
+    @Test
+    void maxBudgetTest() {
+        BigDecimal budget = providers.get(4).generateQuote(bikesToSearch, week).getPrice();
+        BikeProvider expensive = new BikeProvider("Gold Gears", new Location("KY12 3BB", "1 Bullion Rd."),
+                new SimplePricing(), new SimpleValuation(), new MockDeliveryService()) {
+            @Override
+            public Quote generateQuote(Map<BikeType, Integer> bikesWanted, DateRange dates) {
+                throw new IllegalStateException("Should have been priced out");
+            }
+        };
+        expensive.getPricing().setDailyRentalPrice(bmx, new BigDecimal(1000));
+        providers.add(expensive);
+
+        Search search = new Search(new Location("KY12 5WE", ""), week, bikesToSearch, providers);
+        search.setMaxBudget(budget);
+        Assertions.assertEquals(5, search.getQuotes().size());
+        Assertions.assertEquals(5, search.streamQuotes().count());
+        for (Quote q : search.getQuotes()){
+            Assertions.assertEquals(true, q.getPrice().compareTo(budget) <= 0);
+        }
+        Assertions.assertEquals(providers.get(0), search.getCheapestQuotes(2).get(0).getProvider());
+    }
+
+    /*
+    A price with pence should still beat a whole number price a penny more, so a 29.95 quote found after a
+    30 one has to replace it rather than be priced out
+     */
+    @Test
+    void topQuotesMixedScalesTest() {
+        DateRange day = new DateRange(LocalDate.now(), LocalDate.now().plusDays(1));
+        HashMap<BikeType, Integer> oneBike = new HashMap<BikeType, Integer>();
+        oneBike.put(bmx, 1);
+        BigDecimal[] prices = {new BigDecimal(30), new BigDecimal("29.95"), new BigDecimal("30.00")};
+        ArrayList<BikeProvider> priced = new ArrayList<BikeProvider>();
+        for (int i=0; i<prices.length; i++){
+            BikeProvider bp = providers.get(i);
+            bp.getPricing().setDailyRentalPrice(bmx, prices[i]);
+            priced.add(bp);
+        }
+        Search search = new Search(new Location("KY12 5WE", ""), day, oneBike, priced);
+        BigDecimal cheapest = search.getCheapestQuotes(1).get(0).getPrice();
+        Assertions.assertEquals(0, cheapest.compareTo(search.getQuotes().stream().map(Quote::getPrice).min(BigDecimal::compareTo).get()));
+        Assertions.assertEquals(true, search.getCheapestQuotes(1).get(0).getProvider() == providers.get(1));
+    }
+}
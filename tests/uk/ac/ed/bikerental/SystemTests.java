@@ -518,6 +518,106 @@ public class SystemTests {
 
 
 
+    /*
+    The front desk only has the booking ID when bikes are brought back, so we return the booking by its ID alone
+    The booking should be in the provider's registry and the global one, and other providers shouldn't be able
+    to return it
+     */
+    @Test
+    void returnByBookingIdTest() {
+        providers.add(new BikeProvider("EnCyclePedia",
+                new Location("KY12 3BB", "24 Penguin St."), new SimplePricing(),
+                new SimpleValuation(), deliveryService));
+        BikeProvider other = new BikeProvider("Puffin Pedals",
+                new Location("KY12 2QY", "69 Puffin Rd."), new SimplePricing(),
+                new SimpleValuation(), deliveryService);
+
+        providers.get(0).getPricing().setDailyRentalPrice(bmx, new BigDecimal(30));
+        for (int i=0; i<5; i++){
+            providers.get(0).addBike(new Bike(bmx));
+        }
+
+        HashMap<BikeType, Integer> bikesToSearch = new HashMap<BikeType, Integer>();
+        bikesToSearch.put(bmx, 5);
+        ArrayList<Quote> quotes = customer.searchQuotes(new Location("KY12 5WE", ""),
+                bikesToSearch, new DateRange(LocalDate.now(), LocalDate.now().plusDays(7)), providers);
+        customer.makeBooking(quotes.get(0), null, true);
+        BookedQuote booking = customer.getBookings().get(customer.getBookings().size() - 1);
+
+        Assertions.assertEquals(booking, BookingRegistry.getGlobal().get(booking.getBookingID()));
+        Assertions.assertEquals(false, other.returnOrder(booking.getBookingID()));
+        Assertions.assertEquals(true, providers.get(0).returnOrder(booking.getBookingID()));
+
+        Assertions.assertEquals("Returned", booking.getStatus());
+        for (Bike b: booking.getBikes()){
+            Assertions.assertEquals(true, b.checkFree(booking.getDates()));
+        }
+        // Returned bookings are dropped from the registries
+        Assertions.assertEquals(null, BookingRegistry.getGlobal().get(booking.getBookingID()));
+        Assertions.assertEquals(null, providers.get(0).getBookings().get(booking.getBookingID()));
+    }
+
+    /*
+    A registry won't let a second booking take the ID of one it already holds, but registering the same
+    booking again is fine
+     */
+    @Test
+    void duplicateBookingIdTest() {
+        BookingIdGenerator original = BookedQuote.getIdGenerator();
+        BookedQuote booking;
+        BookedQuote clash;
+        try {
+            BookedQuote.setIdGenerator(() -> "Duplicate");
+            booking = new BookedQuote();
+            clash = new BookedQuote();
+        }
+        finally {
+            BookedQuote.setIdGenerator(original);
+        }
+
+        BookingRegistry registry = new BookingRegistry();
+        registry.register(booking);
+        registry.register(booking);
+        Assertions.assertThrows(IllegalStateException.class, () -> registry.register(clash));
+        Assertions.assertEquals(booking, registry.get(booking.getBookingID()));
+    }
+
+    /*
+    Returned bookings stay in the registries, so the same booking ID can be scanned again after its bikes have
+    gone out on a new booking. The second scan shouldn't return anything or touch the new booking's bikes
+     */
+    @Test
+    void returnByBookingIdTwiceTest() {
+        providers.add(new BikeProvider("EnCyclePedia",
+                new Location("KY12 3BB", "24 Penguin St."), new SimplePricing(),
+                new SimpleValuation(), deliveryService));
+        providers.get(0).getPricing().setDailyRentalPrice(bmx, new BigDecimal(30));
+        for (int i=0; i<2; i++){
+            providers.get(0).addBike(new Bike(bmx));
+        }
+
+        HashMap<BikeType, Integer> bikesToSearch = new HashMap<BikeType, Integer>();
+        bikesToSearch.put(bmx, 2);
+        DateRange week = new DateRange(LocalDate.now(), LocalDate.now().plusDays(7));
+        customer.makeBooking(customer.searchQuotes(new Location("KY12 5WE", ""), bikesToSearch, week, providers).get(0), null, true);
+        BookedQuote first = customer.getBookings().get(customer.getBookings().size() - 1);
+        Assertions.assertEquals(true, providers.get(0).returnOrder(first.getBookingID()));
+
+        customer.makeBooking(customer.searchQuotes(new Location("KY12 5WE", ""), bikesToSearch, week, providers).get(0), null, true);
+        BookedQuote second = customer.getBookings().get(customer.getBookings().size() - 1);
+        for (Bike b: second.getBikes()){
+            b.setBikeStatus(BikeStatus.RENTED);
+        }
+
+        Assertions.assertEquals(false, providers.get(0).returnOrder(first.getBookingID()));
+        Assertions.assertEquals(false, second.getStatus().equals("Returned"));
+        for (Bike b: second.getBikes()){
+            Assertions.assertEquals("Rented", b.getStatus());
+            Assertions.assertEquals(false, b.checkFree(week));
+        }
+    }
+
+
 
 
     /*
@@ -85,4 +85,33 @@ class TestDateRange {
         Assertions.assertEquals(false, dr1.overlaps(dr3));
 
     }
+
+    /*
+    Both ends of a range are included, so ranges that share only their first or last day overlap
+     */
+    @Test
+    void testOverlapsEndpoints() {
+        DateRange before = new DateRange(LocalDate.of(2019, 1, 1), LocalDate.of(2019, 1, 7));
+        DateRange after = new DateRange(LocalDate.of(2019, 1, 8), LocalDate.of(2019, 1, 9));
+
+        Assertions.assertEquals(true, dateRange1.overlaps(before));
+        Assertions.assertEquals(true, before.overlaps(dateRange1));
+        Assertions.assertEquals(false, before.overlaps(after));
+        Assertions.assertEquals(true, dateRange2.overlaps(dateRange1));
+    }
+
+    /*
+    Ranges made from the same dates or the same epoch days should be equal with the same hash and length
+     */
+    @Test
+    void testEqualsAndEpochDays() {
+        DateRange copy = DateRange.ofEpochDays(LocalDate.of(2019, 1, 7).toEpochDay(), LocalDate.of(2019, 1, 10).toEpochDay());
+
+        Assertions.assertEquals(dateRange1, copy);
+        Assertions.assertEquals(dateRange1.hashCode(), copy.hashCode());
+        Assertions.assertEquals(LocalDate.of(2019, 1, 10), copy.getEnd());
+        Assertions.assertEquals(3, copy.toDays());
+        Assertions.assertEquals(LocalDate.of(2019, 1, 7).toEpochDay(), copy.getStartEpochDay());
+        Assertions.assertEquals(false, dateRange1.equals(dateRange2));
+    }
 }
@@ -31,4 +31,12 @@ class TestLocation {
         Assertions.assertEquals(true, testLoc3.isNearTo(testLoc3));
 
     }
+
+    @Test
+    void postalAreaAndDistrictTest(){
+        Assertions.assertEquals("EH", testLoc1.getPostalArea());
+        Assertions.assertEquals("EH13", testLoc1.getPostcodeDistrict());
+        Assertions.assertEquals("EH23", testLoc2.getPostcodeDistrict());
+        Assertions.assertEquals("BT17", new Location("BT176NL", "").getPostcodeDistrict());
+    }
 }
@@ -0,0 +1,67 @@
+package uk.ac.ed.bikerental;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+
+class WorkloadGeneratorTest {
+
+    private static WorkloadGenerator makeGenerator() {
+        return new WorkloadGenerator(42, LocalDate.of(2020, 6, 1))
+                .setProviderCount(40)
+                .setPostalAreaCount(4)
+                .setBikesPerProvider(30)
+                .setBookingsPerBike(20);
+    }
+
+    /*
+    We check the deployment has the requested shape and every bike has its bookings
+     */
+    @Test
+    void deploymentShapeTest() {
+        WorkloadGenerator.Deployment deployment = makeGenerator().generate(new MockDeliveryService());
+
+        Assertions.assertEquals(40, deployment.getProviders().size());
+        Assertions.assertEquals(40, deployment.getRegistry().size());
+        Assertions.assertEquals(10, deployment.getRegistry().getProvidersNear(
+                deployment.getProviders().get(0).getLocation()).size());
+
+        int bikes = 0;
+        for (BikeProvider bp : deployment.getProviders()){
+            for (BikeProvider partner : bp.getPartners()){
+                Assertions.assertEquals(true, partner.getLocation().isNearTo(bp.getLocation()));
+            }
+            for (List<Bike> stock : bp.getBikeStocks().values()){
+                for (Bike b : stock){
+                    Assertions.assertEquals(20, b.getDatesRented().size());
+                    bikes++;
+                }
+            }
+        }
+        Assertions.assertEquals(40 * 30, bikes);
+    }
+
+    /*
+    We generate and replay the same workload twice and check that the same things happen both times
+     */
+    @Test
+    void sameSeedSameReplayTest() {
+        WorkloadGenerator.ReplayResult first = replay(makeGenerator());
+        WorkloadGenerator.ReplayResult second = replay(makeGenerator());
+
+        Assertions.assertEquals(true, first.getBookings() > 0);
+        Assertions.assertEquals(true, first.getReturns() > 0);
+        Assertions.assertEquals(first.getSearches(), second.getSearches());
+        Assertions.assertEquals(first.getQuotes(), second.getQuotes());
+        Assertions.assertEquals(first.getBookings(), second.getBookings());
+        Assertions.assertEquals(first.getReturns(), second.getReturns());
+    }
+
+    private static WorkloadGenerator.ReplayResult replay(WorkloadGenerator generator) {
+        WorkloadGenerator.Deployment deployment = generator.generate(new MockDeliveryService());
+        return WorkloadGenerator.replay(deployment, generator.operations(deployment, 500, 0.5, 0.2));
+    }
+}